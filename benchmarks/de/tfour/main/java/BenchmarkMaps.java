@@ -0,0 +1,58 @@
+package de.tfour.main.java;
+
+import java.util.HashSet;
+import java.util.Random;
+
+//generated maps for the benchmarks. the same seed always gives the same map, the same tiles and the same creatures.
+final class BenchmarkMaps {
+
+    static final long SEED = 42;
+
+    private BenchmarkMaps() {
+    }
+
+    //a map of grass with randomly placed stone walls
+    static GameMap generateMap(Game game, String name, int size, float wallDensity) {
+        GameMap map = game.getMap();
+        map.reset(name, size, size);
+        Random random = new Random(SEED);
+        for (int y = 0; y < map.getHeight(); y++) {
+            for (int x = 0; x < map.getWidth(); x++) {
+                if (random.nextFloat() < wallDensity) map.setTile(x, y, 1);
+            }
+        }
+        return map;
+    }
+
+    //indices of distinct random walkable tiles
+    static int[] freeTiles(GameMap map, int count) {
+        Random random = new Random(SEED);
+        HashSet<Integer> used = new HashSet<>();
+        int[] out = new int[count];
+        int found = 0;
+        while (found < count) {
+            int i = map.index(random.nextInt(map.getWidth()), random.nextInt(map.getHeight()));
+            if (map.isViable(i) && used.add(i)) out[found++] = i;
+        }
+        return out;
+    }
+
+    //puts a creature on the first count of the tiles
+    static void addCreatures(Game game, int[] tiles, int count) {
+        GameMap map = game.getMap();
+        for (int i = 0; i < count; i++) {
+            game.addCreature(map.getX(tiles[i]), map.getY(tiles[i]), 'B');
+        }
+    }
+
+    //reads one tile of every chunk, so every chunk is decoded
+    static int touchAllChunks(GameMap map) {
+        int sum = 0;
+        for (int y = 0; y < map.getHeight(); y += Chunk.SIZE) {
+            for (int x = 0; x < map.getWidth(); x += Chunk.SIZE) {
+                sum += map.getType(map.index(x, y)).getId();
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,98 @@
+package de.tfour.main.java;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+//saving and loading maps. the files are written to a temporary folder, so the maps in the resources are never touched.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapFileBenchmark {
+
+    @Param({"64", "256", "1024"})
+    public int size;
+
+    private File binaryDir;
+    private File textDir;
+    private String mapName;
+    private GameMap map;
+    private GameMap loaded;
+
+    @Setup
+    public void setup() throws IOException {
+        mapName = "benchmark" + size;
+        map = BenchmarkMaps.generateMap(new Game(BenchmarkMaps.SEED), mapName, size, 0.3f);
+        loaded = new Game(BenchmarkMaps.SEED).getMap();
+        //one folder with only the text format, so loading it cannot pick the binary file
+        textDir = Files.createTempDirectory("tfour-benchmark").toFile();
+        map.setDirectory(textDir.getPath() + File.separator);
+        map.exportText();
+        binaryDir = Files.createTempDirectory("tfour-benchmark").toFile();
+        map.setDirectory(binaryDir.getPath() + File.separator);
+        map.saveMap();
+    }
+
+    @TearDown
+    public void tearDown() {
+        //the loaded maps still read from the files, a new empty map lets go of them
+        map.reset("generated", 1, 1);
+        loaded.reset("generated", 1, 1);
+        delete(binaryDir);
+        delete(textDir);
+    }
+
+    private static void delete(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public void saveMap() {
+        map.saveMap();
+    }
+
+    //loading only maps the file, the chunks are decoded when they are first used
+    @Benchmark
+    public int loadMap() {
+        loaded.setDirectory(binaryDir.getPath() + File.separator);
+        loaded.loadMap(mapName);
+        return loaded.getWidth();
+    }
+
+    @Benchmark
+    public int loadMapDecodeAll() {
+        loaded.setDirectory(binaryDir.getPath() + File.separator);
+        loaded.loadMap(mapName);
+        return BenchmarkMaps.touchAllChunks(loaded);
+    }
+
+    @Benchmark
+    public int loadMapText() {
+        loaded.setDirectory(textDir.getPath() + File.separator);
+        loaded.loadMap(mapName);
+        return BenchmarkMaps.touchAllChunks(loaded);
+    }
+}
@@ -0,0 +1,65 @@
+package de.tfour.main.java;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+//paths between random tiles and the move pool around them, on maps with more or fewer walls.
+//every operation uses the next tiles from a fixed list, so nothing can be answered from a cache.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathfindingBenchmark {
+
+    @Param({"64", "256", "1024"})
+    public int size;
+    @Param({"0.1", "0.3"})
+    public float walls;
+
+    private GameMap map;
+    private int[] free;
+    private int k;
+    private final MovePool pool = new MovePool();
+
+    @Setup
+    public void setup() {
+        map = BenchmarkMaps.generateMap(new Game(BenchmarkMaps.SEED), "generated", size, walls);
+        free = BenchmarkMaps.freeTiles(map, 1024);
+    }
+
+    @Benchmark
+    public int astar() {
+        ArrayList<Tile> path = map.astar(map.getTile(free[k]), map.getTile(free[k + 1]));
+        k = (k + 2) % free.length;
+        return path == null ? -1 : path.size();
+    }
+
+    //the same queries as astar. the clusters of the hierarchical search are built during warmup.
+    @Benchmark
+    public int findPath() {
+        ArrayList<Tile> path = map.findPath(map.getTile(free[k]), map.getTile(free[k + 1]));
+        k = (k + 2) % free.length;
+        return path == null ? -1 : path.size();
+    }
+
+    @Benchmark
+    public int movePool() {
+        pool.update(map, map.getX(free[k]), map.getY(free[k]), 6);
+        k = (k + 1) % free.length;
+        return pool.size();
+    }
+}
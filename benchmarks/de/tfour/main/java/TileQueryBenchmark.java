@@ -0,0 +1,81 @@
+package de.tfour.main.java;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+//questions about the tiles around a tile. with creatures on the map the tiles they stand on are asked, so the
+//lookups go through the chunks' tile contents and the creature index.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TileQueryBenchmark {
+
+    @Param({"64", "256", "1024"})
+    public int size;
+    //creatures per tile
+    @Param({"0", "0.005", "0.02"})
+    public float creatures;
+
+    private Game game;
+    private GameMap map;
+    private int[] tiles;
+    private int k;
+    private final int[] buffer = new int[4];
+    private final ArrayList<Creature> found = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        game = new Game(BenchmarkMaps.SEED);
+        map = BenchmarkMaps.generateMap(game, "generated", size, 0.1f);
+        int count = (int) (size * size * creatures);
+        tiles = BenchmarkMaps.freeTiles(map, Math.max(1024, count));
+        BenchmarkMaps.addCreatures(game, tiles, count);
+        if (count > 0) tiles = Arrays.copyOf(tiles, count);
+    }
+
+    @Benchmark
+    public int tilesInRadius() {
+        int n = map.getTile(tiles[k]).getTilesInRadius(6).size();
+        k = (k + 1) % tiles.length;
+        return n;
+    }
+
+    @Benchmark
+    public int viableNeighbours() {
+        int n = map.getTile(tiles[k]).getViableNeighbours().size();
+        k = (k + 1) % tiles.length;
+        return n;
+    }
+
+    @Benchmark
+    public int viableNeighboursIndex() {
+        int n = map.getViableNeighbours(tiles[k], buffer);
+        k = (k + 1) % tiles.length;
+        return n;
+    }
+
+    //the radius of a creature's awareness
+    @Benchmark
+    public int creaturesInRadius() {
+        found.clear();
+        int n = game.getCreatureIndex().inRadius(map.getX(tiles[k]), map.getY(tiles[k]), 6, found).size();
+        k = (k + 1) % tiles.length;
+        return n;
+    }
+}
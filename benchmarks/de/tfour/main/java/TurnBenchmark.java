@@ -0,0 +1,58 @@
+package de.tfour.main.java;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+//whole turns of a headless game where the player plays itself. the ai plans its rounds on the planner's fork/join
+//workers, which is why the allocations have to be counted on all threads (the gc profiler does).
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TurnBenchmark {
+
+    @Param({"64", "256", "1024"})
+    public int size;
+    //creatures per tile
+    @Param({"0.005", "0.02"})
+    public float creatures;
+
+    private Game game;
+
+    @Setup
+    public void setup() {
+        game = new Game(BenchmarkMaps.SEED);
+        game.setAnimated(false);
+        game.setAutoPlayer(true);
+        GameMap map = BenchmarkMaps.generateMap(game, "generated", size, 0.1f);
+        int[] free = BenchmarkMaps.freeTiles(map, Math.max(2, (int) (size * size * creatures)));
+        game.placePlayer(map.getX(free[0]), map.getY(free[0]));
+        for (int i = 1; i < free.length; i++) {
+            game.addCreature(map.getX(free[i]), map.getY(free[i]), 'B');
+        }
+        game.start();
+    }
+
+    //one operation is one full turn of one creature, from its planning until the next creature's turn starts
+    @Benchmark
+    public int turn() {
+        long turn = game.getTurnCount();
+        while (game.getTurnCount() == turn) {
+            game.update();
+        }
+        return game.getPlayer().getX();
+    }
+}
@@ -0,0 +1,67 @@
+package de.tfour.main.java;
+
+//the part of the map that is shown in the window. it follows a creature and stops at the map borders.
+public class Camera {
+
+    private final int widthInTiles;
+    private final int heightInTiles;
+    //pixel offset of the top left corner of the view
+    private float pixelX;
+    private float pixelY;
+
+    public Camera(int widthInTiles, int heightInTiles) {
+        this.widthInTiles = widthInTiles;
+        this.heightInTiles = heightInTiles;
+    }
+
+    //centers the view on the creature's pixel position, alpha of the way from its previous one (see Creature.getPixelX)
+    public void follow(Creature c, GameMap map, float alpha) {
+        float maxX = Math.max(0, (map.getWidth() - widthInTiles) * Tile.WIDTH);
+        float maxY = Math.max(0, (map.getHeight() - heightInTiles) * Tile.WIDTH);
+        pixelX = Math.min(maxX, Math.max(0, c.getPixelX(alpha) + Tile.WIDTH / 2 - widthInTiles * Tile.WIDTH / 2));
+        pixelY = Math.min(maxY, Math.max(0, c.getPixelY(alpha) + Tile.WIDTH / 2 - heightInTiles * Tile.WIDTH / 2));
+    }
+
+    public float getPixelX() {
+        return pixelX;
+    }
+
+    public float getPixelY() {
+        return pixelY;
+    }
+
+    //first visible tile column
+    public int getTileX() {
+        return (int) (pixelX / Tile.WIDTH);
+    }
+
+    //first visible tile row
+    public int getTileY() {
+        return (int) (pixelY / Tile.WIDTH);
+    }
+
+    //last (possibly partly) visible tile column
+    public int getLastTileX() {
+        return (int) ((pixelX + widthInTiles * Tile.WIDTH - 1) / Tile.WIDTH);
+    }
+
+    //last (possibly partly) visible tile row
+    public int getLastTileY() {
+        return (int) ((pixelY + heightInTiles * Tile.WIDTH - 1) / Tile.WIDTH);
+    }
+
+    //true if the chunk lies within the view, or at most margin chunks away from it
+    public boolean isNear(int chunkX, int chunkY, int margin) {
+        return chunkX >= (getTileX() >> Chunk.BITS) - margin && chunkX <= (getLastTileX() >> Chunk.BITS) + margin
+                && chunkY >= (getTileY() >> Chunk.BITS) - margin && chunkY <= (getLastTileY() >> Chunk.BITS) + margin;
+    }
+
+    //converts a mouse position in window pixels (below the info bar) to a tile column/row
+    public int toTileX(float screenX) {
+        return (int) Math.floor((screenX + pixelX) / Tile.WIDTH);
+    }
+
+    public int toTileY(float screenY) {
+        return (int) Math.floor((screenY + pixelY) / Tile.WIDTH);
+    }
+}
@@ -0,0 +1,171 @@
+package de.tfour.main.java;
+
+import java.util.Arrays;
+
+//a square block of tiles. the map only creates chunks once they are needed, so large worlds cost memory only where they are used.
+//tiles are stored as a struct of arrays: one type id per tile plus bitsets, objects only exist for tiles with contents.
+class Chunk {
+
+    //a chunk is SIZE x SIZE tiles
+    static final int BITS = 5;
+    static final int SIZE = 1 << BITS;
+    static final int MASK = SIZE - 1;
+    static final int AREA = SIZE * SIZE;
+    //tile indices are chunk major: the upper bits select the chunk, the lower INDEX_BITS the tile within it
+    static final int INDEX_BITS = 2 * BITS;
+
+    //neighbour of every local index in GameMap.DIR order. the local index wraps around into the adjacent chunk at the border,
+    //CROSSES_BORDER tells when that happens. the table is the same for every chunk, so it is only stored once.
+    static final int[] NEIGHBOUR_LOCAL = new int[AREA * 4];
+    static final boolean[] CROSSES_BORDER = new boolean[AREA * 4];
+
+    static {
+        for (int ly = 0; ly < SIZE; ly++) {
+            for (int lx = 0; lx < SIZE; lx++) {
+                for (int d = 0; d < 4; d++) {
+                    int nx = lx + GameMap.DIR_X[d];
+                    int ny = ly + GameMap.DIR_Y[d];
+                    int slot = (ly * SIZE + lx) * 4 + d;
+                    NEIGHBOUR_LOCAL[slot] = local(nx, ny);
+                    CROSSES_BORDER[slot] = nx < 0 || ny < 0 || nx >= SIZE || ny >= SIZE;
+                }
+            }
+        }
+    }
+
+    final int chunkX;
+    final int chunkY;
+    //type id per local index (x + y * SIZE), TileType.VOID outside of the map
+    final short[] types = new short[AREA];
+    //one bit per local index
+    final long[] seen = new long[AREA / 64];
+    final long[] visible = new long[AREA / 64];
+    final long[] solid = new long[AREA / 64];
+    //number of bits set in seen
+    int seenTileCount;
+    //map version of the last change to one of the chunk's tiles, see MapJournal
+    int version;
+    //creatures and items by local index, null as long as the chunk has none. an array rather than a map, so looking
+    //a tile up (e.g. in isViable, on every neighbour of every search) never boxes the index.
+    TileContents[] contents;
+    private int contentsCount;
+
+    //tiles that changed since the renderer last redrew the chunk's cached layer (see GameRenderer).
+    //only tracked while the chunk has a layer, i.e. while it is close to the camera.
+    boolean layerInvalid = true;
+    boolean layerIgnoreFog;
+    boolean[] layerDirty;
+    int[] dirtyTiles;
+    int dirtyTileCount;
+    //tiles whose visible bit changed since the renderer last updated the chunk's fog mask, tracked along with the layer
+    boolean fogInvalid = true;
+    boolean[] fogDirty;
+    int[] fogDirtyTiles;
+    int fogDirtyCount;
+    //local indices of the animated tiles, which are drawn every frame on top of the layer
+    int[] animatedTiles = new int[0];
+    int animatedTileCount;
+    boolean animatedTilesDirty = true;
+
+    Chunk(int chunkX, int chunkY) {
+        this.chunkX = chunkX;
+        this.chunkY = chunkY;
+    }
+
+    static int local(int x, int y) {
+        return (y & MASK) * SIZE + (x & MASK);
+    }
+
+    static boolean getBit(long[] bits, int local) {
+        return (bits[local >> 6] & (1L << local)) != 0;
+    }
+
+    static void setBit(long[] bits, int local, boolean value) {
+        if (value) {
+            bits[local >> 6] |= 1L << local;
+        } else {
+            bits[local >> 6] &= ~(1L << local);
+        }
+    }
+
+    boolean isInside(int local) {
+        return types[local] != TileType.VOID;
+    }
+
+    void setType(int local, int id) {
+        types[local] = (short) id;
+        setBit(solid, local, id == TileType.VOID || TileType.get(id).isSolid());
+    }
+
+    TileContents getContents(int local) {
+        return contents == null ? null : contents[local];
+    }
+
+    TileContents getOrCreateContents(int local) {
+        if (contents == null) contents = new TileContents[AREA];
+        TileContents c = contents[local];
+        if (c == null) {
+            c = new TileContents();
+            contents[local] = c;
+            contentsCount++;
+        }
+        return c;
+    }
+
+    //drops the contents object of a tile once it holds nothing anymore, and the array once no tile has any
+    void releaseContents(int local) {
+        TileContents c = getContents(local);
+        if (c == null || !c.isEmpty()) return;
+        contents[local] = null;
+        if (--contentsCount == 0) contents = null;
+    }
+
+    //queues a tile to be redrawn into the cached layer
+    void markDirty(int local) {
+        if (layerDirty == null || layerInvalid || layerDirty[local]) return;
+        layerDirty[local] = true;
+        dirtyTiles[dirtyTileCount++] = local;
+    }
+
+    //queues a tile to be updated in the fog mask
+    void markFogDirty(int local) {
+        if (fogDirty == null || fogInvalid || fogDirty[local]) return;
+        fogDirty[local] = true;
+        fogDirtyTiles[fogDirtyCount++] = local;
+    }
+
+    void updateAnimatedTiles() {
+        if (!animatedTilesDirty) return;
+        animatedTilesDirty = false;
+        animatedTileCount = 0;
+        for (int i = 0; i < AREA; i++) {
+            if (!isInside(i) || !TileType.get(types[i]).isAnimated()) continue;
+            if (animatedTileCount == animatedTiles.length) {
+                animatedTiles = Arrays.copyOf(animatedTiles, Math.max(16, animatedTileCount * 2));
+            }
+            animatedTiles[animatedTileCount++] = i;
+        }
+    }
+
+    //starts tracking changed tiles for a newly created render layer
+    void createLayer() {
+        layerDirty = new boolean[AREA];
+        dirtyTiles = new int[AREA];
+        layerInvalid = true;
+        fogDirty = new boolean[AREA];
+        fogDirtyTiles = new int[AREA];
+        fogInvalid = true;
+    }
+
+    //stops tracking changed tiles, e.g. when the chunk scrolled out of view and its layer was dropped
+    void releaseLayer() {
+        layerInvalid = true;
+        layerDirty = null;
+        dirtyTiles = null;
+        dirtyTileCount = 0;
+        fogInvalid = true;
+        fogDirty = null;
+        fogDirtyTiles = null;
+        fogDirtyCount = 0;
+    }
+}
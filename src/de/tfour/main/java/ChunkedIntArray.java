@@ -0,0 +1,36 @@
+package de.tfour.main.java;
+
+import java.util.Arrays;
+
+//an int array over tile indices that only allocates memory for the chunks that are actually written to.
+//entries that were never written read as 0.
+class ChunkedIntArray {
+
+    private int[][] pages = new int[0][];
+
+    //drops all pages, every entry reads as 0 again
+    void resize(int chunkCount) {
+        pages = new int[chunkCount][];
+    }
+
+    int get(int index) {
+        int[] page = pages[index >> Chunk.INDEX_BITS];
+        return page == null ? 0 : page[index & (Chunk.AREA - 1)];
+    }
+
+    void set(int index, int value) {
+        int chunk = index >> Chunk.INDEX_BITS;
+        int[] page = pages[chunk];
+        if (page == null) {
+            page = new int[Chunk.AREA];
+            pages[chunk] = page;
+        }
+        page[index & (Chunk.AREA - 1)] = value;
+    }
+
+    void clear() {
+        for (int[] page : pages) {
+            if (page != null) Arrays.fill(page, 0);
+        }
+    }
+}
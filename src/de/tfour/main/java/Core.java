@@ -3,15 +3,39 @@ package de.tfour.main.java;
 import processing.core.PApplet;
 import processing.core.PFont;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+//the window. while the game starts up, the font, the game (with its map) and the sprites are loaded at the same time
+//on background threads and a loading screen is drawn. the first frame of the game follows once all three are done.
 public class Core extends PApplet {
 
     public static final int widthInTiles = 20;
     public static final int heightInTiles = 16;
 
+    //when the program was started, the time to the first frame of the game is measured from here
+    private static final long LAUNCHED = System.nanoTime();
+
     private Game game;
+    private GameRenderer renderer;
+    private GameLoop loop;
+
+    private CompletableFuture<PFont> font;
+    private CompletableFuture<Game> loadingGame;
+    private CompletableFuture<SpriteCache> sprites;
+    //milliseconds after launch at which each part was loaded, and the loading screen was first drawn
+    private volatile long fontLoaded;
+    private volatile long gameLoaded;
+    private volatile long spritesLoaded;
+    private long loadingScreenShown;
 
     public static void main(String... args) {
-        PApplet.main("de.tfour.main.java.Core");
+        //with -thread the game updates on a thread of its own instead of before each frame.
+        //-seed <n> starts the game with a fixed seed, -record <file> records the session for Replay.
+        PApplet.main("de.tfour.main.java.Core", args);
     }
 
     public void settings() {
@@ -21,26 +45,85 @@ public class Core extends PApplet {
     }
 
     public void setup() {
-        PFont courierFont;
-        courierFont = createFont("FSEX300.ttf", Tile.WIDTH);
-        textFont(courierFont);
-        textSize(Tile.WIDTH);
         noStroke();
-        fill(0);
-        game = new Game(this);
-        game.setup();
+        font = CompletableFuture.supplyAsync(() -> {
+            PFont f = createFont("FSEX300.ttf", Tile.WIDTH);
+            fontLoaded = millisSinceLaunch();
+            return f;
+        });
+        loadingGame = CompletableFuture.supplyAsync(() -> {
+            Game g = createGame();
+            gameLoaded = millisSinceLaunch();
+            return g;
+        });
+        sprites = CompletableFuture.supplyAsync(() -> {
+            SpriteCache cache = new SpriteCache(this);
+            cache.preload();
+            spritesLoaded = millisSinceLaunch();
+            return cache;
+        });
+    }
+
+    //sets up the game and its map. the chunks around the player are loaded right away, the rest in the background.
+    private Game createGame() {
+        String seed = getArg("-seed");
+        Game g = seed != null ? new Game(Long.parseLong(seed)) : new Game();
+        String recording = getArg("-record");
+        if (recording != null) {
+            try {
+                g.setRecorder(new InputRecorder(g, new File(recording)));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        g.setup();
+        return g;
     }
 
     public void draw() {
-        game.draw();
+        if (renderer == null) {
+            if (!font.isDone() || !loadingGame.isDone() || !sprites.isDone()) {
+                drawLoadingScreen();
+                return;
+            }
+            startGame();
+            renderer.draw();
+            System.out.println(String.format("First frame after %dms (loading screen %dms, font %dms, game and map %dms, sprites %dms)",
+                    millisSinceLaunch(), loadingScreenShown, fontLoaded, gameLoaded, spritesLoaded));
+            return;
+        }
+        renderer.draw();
     }
 
+    private void startGame() {
+        textFont(font.join());
+        textSize(Tile.WIDTH);
+        fill(0);
+        game = loadingGame.join();
+        loop = new GameLoop(game);
+        renderer = new GameRenderer(this, game, loop, sprites.join());
+        if (args != null && Arrays.asList(args).contains("-thread")) loop.start();
+    }
+
+    //drawn with processing's default font, the game's own may still be loading
+    private void drawLoadingScreen() {
+        if (loadingScreenShown == 0) loadingScreenShown = millisSinceLaunch();
+        background(0);
+        fill(255);
+        textSize(Tile.WIDTH / 2);
+        text("Loading" + "...".substring(0, frameCount / 20 % 4), Tile.WIDTH, 2 * Tile.WIDTH);
+        text("map: " + (loadingGame.isDone() ? "done" : "loading"), Tile.WIDTH, 3 * Tile.WIDTH);
+        text("sprites: " + (sprites.isDone() ? "done" : "loading"), Tile.WIDTH, 3.75f * Tile.WIDTH);
+        text("font: " + (font.isDone() ? "done" : "loading"), Tile.WIDTH, 4.5f * Tile.WIDTH);
+    }
+
+    //input while loading is ignored
     public void keyPressed() {
-        game.handleInput();
+        if (renderer != null) renderer.keyPressed();
     }
 
     public void mousePressed() {
-        game.handleInput();
+        if (renderer != null) renderer.mousePressed();
     }
 
     public Game getGame() {
@@ -49,8 +132,21 @@ public class Core extends PApplet {
 
     //UTILITY
 
+    //the value after the given option in the command line, or null if it is not there
+    private String getArg(String name) {
+        if (args == null) return null;
+        List<String> list = Arrays.asList(args);
+        int i = list.indexOf(name);
+        return i >= 0 && i + 1 < list.size() ? list.get(i + 1) : null;
+    }
+
+    private static long millisSinceLaunch() {
+        return (System.nanoTime() - LAUNCHED) / 1000000;
+    }
+
     public int getRandomColor() {
-        return color(random(255), random(255), random(255));
+        GameRandom random = game.getEffectsRandom();
+        return color(random.nextFloat() * 255, random.nextFloat() * 255, random.nextFloat() * 255);
     }
 
 }
\ No newline at end of file
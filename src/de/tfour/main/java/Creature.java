@@ -1,22 +1,24 @@
 package de.tfour.main.java;
 
-import processing.core.PApplet;
-import processing.core.PConstants;
-import processing.core.PImage;
-
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.InputMismatchException;
+import java.util.List;
 
+//a creature's state and turn rules. it is drawn by GameRenderer, which only reads from it.
 public class Creature {
 
-    final Core core;
+    final Game game;
 
     //counts how many times the Creature constructor has been called
     private static int creaturecount = 0;
 
+    //how many looks (sprite sheets) there are for creatures other than the player
+    static final int VARIANTS = 5;
+
     //name of the creature
-    String name;
+    private String name;
+    //which of the looks the creature has, from its name so it stays the same after loading
+    private int variant;
 
     //hitpoints (currently)
     private int hp;
@@ -31,6 +33,10 @@ public class Creature {
     //current pixel position (e.g. a tile position of 5|5 means a pixel position of 5*Tile.WIDTH|5*Tile.WIDTH)
     private int pixelX;
     private int pixelY;
+    //pixel position before the last update and the number of that update, to draw the creature between two updates
+    private int previousPixelX;
+    private int previousPixelY;
+    private long previousPixelUpdate = -1;
 
     //how many pixels a creature can move per frame
     private final int movespeed = 3;
@@ -41,12 +47,6 @@ public class Creature {
     //direction in which the creature faces right now. 0 1 2 3 -> up left down right
     private int direction;
 
-    //the sprite sheet of the character
-    PImage[] img;
-    //determines which sprite of the spritesheet should currently be drawn
-    private int animationOffset = 1;
-    //whether the animation of the sprites is running forwards or backwards
-    private boolean animationForwards = true;
     //a single char representing the creature. if there's no spritesheet (yet), this is drawn instead.
     private final char model;
 
@@ -54,74 +54,87 @@ public class Creature {
     private final Inventory inventory;
 
     //the pool of tiles which the creature can move to this turn, depending on ap currently remaining
-    private HashSet<Tile> movepool;
+    private final MovePool movepool;
     //how many ap you currently have. ap stands for action points. most actions and movement cost ap.
     private int ap;
     //how many ap you start your turn with
     private final int apPerTurn;
     //movement buffer for the moves the creature will take in its next turns. this is where movement from pathfinding is stored.
     private ArrayList<Tile> nextMoves;
+    //moves planned ahead for the next turn (see TurnPlanner), they become nextMoves when the turn starts
+    private ArrayList<Tile> plannedMoves;
+    private boolean followingPlan;
 
     //is true if it's the creature's turn, otherwise false
     boolean myTurn = false;
+    //how often the creature gets a turn, 100 is normal. a creature with speed 200 gets twice as many turns.
+    private int speed = 100;
+    //position in the turn order, managed by TurnScheduler
+    long nextTurnTime;
+    long turnSequence;
+    int schedulerIndex = -1;
+    int dormantChunk;
 
     //method that constructs a creature and then assigns it to a tile.
-    public static Creature create(Core core, int x, int y, char model) {
-        Creature c = new Creature(core, x, y, model);
-        Tile tile = core.getGame().getMap().getTile(x, y);
+    public static Creature create(Game game, int x, int y, char model) {
+        Creature c = new Creature(game, x, y, model);
+        Tile tile = game.getMap().getTile(x, y);
         if (tile != null && tile.getCreature() == null) {
             tile.setCreature(c);
+            //a creature that could not be placed is nowhere on the map, so the index must not find it anywhere either
+            game.getCreatureIndex().add(c);
         }
         return c;
     }
 
     //constructor. direct use of the constructor is not recommended, because it does not assign the creature to a tile. use create() instead.
-    Creature(Core core, int x, int y, char model) {
-        this.core = core;
+    Creature(Game game, int x, int y, char model) {
+        this.game = game;
         creaturecount++;
         this.x = x;
         this.y = y;
         this.model = model;
-        this.inventory = new Inventory(core);
+        this.inventory = new Inventory();
         this.moving = false;
-        this.name = "Creature" + creaturecount;
+        setName("Creature" + creaturecount);
         this.hpMax = 20;
         this.hp = hpMax;
         this.pixelX = (int) (x * Tile.WIDTH);
         this.pixelY = (int) (y * Tile.WIDTH);
+        this.awareness = 6;
         this.apPerTurn = 6;
         this.ap = apPerTurn;
-        this.movepool = calcMovePool();
+        this.movepool = new MovePool();
         this.direction = 2;
-        this.img = new PImage[12];
-        int randint = 1 + PApplet.floor(core.random(5));
-        for (int i = 0; i < 12; i++) {
-            img[i] = core.loadImage("src/de/tfour/main/resources/enemy/e" + randint + PApplet.nf(i, 2) + ".png");
-        }
     }
 
-    //update and draw the creature
-    public void draw() {
+    //advances the movement animation
+    public void update() {
+        //without animation (e.g. headless) a step is finished right away
+        int speed = game.isAnimated() ? movespeed : (int) Tile.WIDTH;
+        previousPixelX = pixelX;
+        previousPixelY = pixelY;
+        previousPixelUpdate = game.getUpdateCount();
         //update pixel coordinates
         if (moving) {
             switch (direction) {
                 default:
                     break;
                 case 0:
-                    pixelY -= movespeed;
+                    pixelY -= speed;
                     break;
                 case 1:
-                    pixelX -= movespeed;
+                    pixelX -= speed;
                     break;
                 case 2:
-                    pixelY += movespeed;
+                    pixelY += speed;
                     break;
                 case 3:
-                    pixelX += movespeed;
+                    pixelX += speed;
                     break;
             }
         }
-        moveCount += movespeed;
+        moveCount += speed;
         //if moveCount is bigger than Tile.WIDTH the creature moved a whole tile, so movement should end.
         if (moveCount >= Tile.WIDTH) {
             setMoving(false);
@@ -129,41 +142,15 @@ public class Creature {
             //pixelpos are calculated again in case the creature "overshot" the goal by a few pixels.
             calculatePixelPositions();
         }
-        //if the tile the creature is on has not yet been discovered, it's not drawn. as easy as that!
-        if (!getTile().isSeen()) return;
-        //draw the creature
-        if (img == null) {
-            //if there's no spritesheet, draw the model char instead
-            core.fill(0);
-            core.textAlign(PConstants.CENTER, PConstants.CENTER);
-            core.text(model, pixelX + Tile.WIDTH / 2, pixelY + Tile.WIDTH / 2);
-            return;
-        } else {
-            //draw the sprite and calculate the right animationOffset based on the current frame
-            int animationIndex = direction + animationOffset * 4;
-            if (myTurn) {
-                if (core.frameCount % 30 == 0) {
-                    if (animationForwards) {
-                        animationOffset++;
-                    } else animationOffset--;
-                    if (animationOffset == 0 || animationOffset == 2) animationForwards = !animationForwards;
-                }
-            }
-            core.image(img[animationIndex], pixelX, pixelY, Tile.WIDTH, Tile.WIDTH);
-        }
-
-        //draw the health bar of the creature
-        core.fill(255);
-        core.rect(pixelX, pixelY, Tile.WIDTH, 10);
-        core.fill(0, 255, 0);
-        core.rect(pixelX, pixelY, PApplet.map(hp, 0, hpMax, 0, Tile.WIDTH), 10);
     }
 
     //move to an adjacent tile
     public boolean move(Tile t) {
         Tile myTile = getTile();
-        if (!myTile.getViableNeighbours().contains(t)) {
-            PApplet.println("Error, cannot move to a non-adjacent tile!");
+        GameMap map = game.getMap();
+        boolean adjacent = t != null && Math.abs(myTile.getX() - t.getX()) + Math.abs(myTile.getY() - t.getY()) == 1;
+        if (!adjacent || !map.isViable(map.index(t.getX(), t.getY()))) {
+            System.out.println("Error, cannot move to a non-adjacent tile!");
             return false;
         }
         if (myTile.getY() - t.getY() < 0) move(2);
@@ -201,27 +188,29 @@ public class Creature {
         }
         this.direction = direction;
         if (targetX == -1 || targetY == -1) return false;
-        Tile targetTile = core.getGame().getMap().getTile(targetX, targetY);
-        if (targetTile == null || targetTile.isSolid() || targetTile.getCreature() != null || !movepool.contains(targetTile))
+        Tile targetTile = game.getMap().getTile(targetX, targetY);
+        if (targetTile == null || targetTile.isSolid() || targetTile.getCreature() != null || !calcMovePool().contains(targetTile))
             return false;
 
         //movement successful
         targetTile.setCreature(this);
-        core.getGame().getMap().getTile(x, y).setCreature(null);
+        game.getMap().getTile(x, y).setCreature(null);
+        int oldX = x;
+        int oldY = y;
         x = targetX;
         y = targetY;
-        ArrayList<Item> items = targetTile.getItems();
+        game.getCreatureIndex().move(this, oldX, oldY);
+        List<Item> items = targetTile.getItems();
         setMoving(true);
         ap--;
-        movepool = calcMovePool();
 
         //handle item pickup (if any)
         if (items.isEmpty()) return true;
         for (Item i : items) {
             inventory.addItem(i);
-            core.getGame().sendTextBubble("+" + i.getName());
+            game.sendTextBubble("+" + i.getName());
         }
-        items.clear();
+        targetTile.clearItems();
         return true;
     }
 
@@ -235,9 +224,9 @@ public class Creature {
     private void setMoving(boolean isMoving) {
         this.moving = isMoving;
         if (!moving) {
-            core.getGame().setManualMovementAllowed(true);
+            game.setManualMovementAllowed(true);
         } else {
-            core.getGame().setManualMovementAllowed(false);
+            game.setManualMovementAllowed(false);
         }
     }
 
@@ -250,69 +239,106 @@ public class Creature {
     }
 
     public Tile getTile() {
-        return core.getGame().getMap().getTile(x, y);
+        return game.getMap().getTile(x, y);
     }
 
-    private HashSet<Tile> calcMovePool() {
-        Tile currentTile = getTile();
-        HashSet<Tile> movepool = new HashSet<>();
-        if (ap <= 0) {
-            if (ap < 0)
-                PApplet.println("Error! Negative actions left for " + name);
-            return movepool;
+    //brings the movepool up to date. this is cheap if neither position, ap nor the map changed since the last call.
+    private MovePool calcMovePool() {
+        if (movepool.update(game.getMap(), x, y, ap) && ap < 0) {
+            System.out.println("Error! Negative actions left for " + name);
         }
-        movepool.addAll(currentTile.getViableNeighbours());
-        for (int i = 0; i < ap - 1; i++) {
-            ArrayList<Tile> toAdd = new ArrayList<>();
-            for (Tile t : movepool) {
-                toAdd.addAll(t.getViableNeighbours());
-            }
-            movepool.addAll(toAdd);
-        }
-        movepool.remove(getTile());
         return movepool;
     }
 
-    public HashSet<Tile> getMovepool() {
-        return movepool;
+    public MovePool getMovepool() {
+        return calcMovePool();
     }
 
     public int getAp() {
         return ap;
     }
 
+    public int getApPerTurn() {
+        return apPerTurn;
+    }
+
+    public int getSpeed() {
+        return speed;
+    }
+
+    //takes effect from the creature's next turn on
+    public void setSpeed(int speed) {
+        this.speed = speed;
+    }
+
     public void startTurn() {
         ap = apPerTurn;
-        core.getGame().setToMove(this);
-        movepool = calcMovePool();
+        game.setToMove(this);
         myTurn = true;
+        if (plannedMoves != null) {
+            nextMoves = plannedMoves;
+            plannedMoves = null;
+            followingPlan = true;
+        }
         Tile tile = getTile();
         TileEvent event = tile.getTileEvent();
         if (event != null) event.execute(tile);
     }
 
     public void endTurn() {
-        animationOffset = 1;
         myTurn = false;
+        //moves that were planned for this turn but not made (e.g. the turn was skipped) are dropped
+        if (followingPlan) nextMoves = null;
+        followingPlan = false;
     }
 
     public void randomTurn() {
-        actRandomly(ap);
+        nextMoves = planTurn(game.getRandom(), ap);
+        //nothing to do (e.g. already next to the player or boxed in), so the turn is over
+        if (nextMoves.isEmpty()) game.nextTurn();
     }
 
-    private void actRandomly(int howoften) {
-        //random movement
-        if (nextMoves == null) nextMoves = new ArrayList<>();
+    //the moves the creature wants to make with the given number of steps: creatures that are close enough to notice
+    //the player walk towards them, everyone else wanders around. this only reads the map, see TurnPlanner.
+    ArrayList<Tile> planTurn(GameRandom random, int steps) {
+        ArrayList<Tile> moves = new ArrayList<>(steps);
+        GameMap map = game.getMap();
         Tile tile = getTile();
-        for (int i = 0; i < howoften; i++) {
-            Tile randomNeighbour = tile.getRandomViableNeighbour();
-            if (randomNeighbour == null) {
-                core.getGame().nextTurn();
-                return;
-            }
-            nextMoves.add(randomNeighbour);
-            tile = randomNeighbour;
+        int distance = map.getFlowDistance(tile);
+        boolean followFlowField = distance > 0 && distance <= awareness;
+        for (int i = 0; i < steps; i++) {
+            Tile step = followFlowField ? map.getFlowStep(tile) : tile.getRandomViableNeighbour(random);
+            if (step == null) break;
+            moves.add(step);
+            tile = step;
         }
+        return moves;
+    }
+
+    //the other creatures within the creature's awareness, closest first
+    public ArrayList<Creature> getNoticedCreatures() {
+        ArrayList<Creature> noticed = game.getCreatureIndex().inRadius(x, y, awareness, new ArrayList<>());
+        noticed.remove(this);
+        noticed.sort((a, b) -> Integer.compare(Math.abs(a.x - x) + Math.abs(a.y - y), Math.abs(b.x - x) + Math.abs(b.y - y)));
+        return noticed;
+    }
+
+    //puts back the state of a saved creature, see SaveGame
+    void restore(int hp, int ap, int direction, boolean myTurn) {
+        this.hp = hp;
+        this.ap = ap;
+        this.direction = direction;
+        this.myTurn = myTurn;
+    }
+
+    //hands the creature the moves for its next turn, which it makes instead of planning on its own
+    void setPlannedMoves(ArrayList<Tile> plannedMoves) {
+        this.plannedMoves = plannedMoves;
+    }
+
+    //true while the creature makes moves that were planned for it. once they are done, so is the turn.
+    public boolean isFollowingPlan() {
+        return followingPlan;
     }
 
     public void setNextMoves(ArrayList<Tile> nextMoves) {
@@ -335,6 +361,27 @@ public class Creature {
         return pixelY;
     }
 
+    //the pixel position part of the way (alpha from 0 to 1) from where the creature was before the last update to
+    //where it is now. creatures that were not updated in the last update are simply where they are.
+    public float getPixelX(float alpha) {
+        if (previousPixelUpdate != game.getUpdateCount()) return pixelX;
+        return previousPixelX + (pixelX - previousPixelX) * alpha;
+    }
+
+    public float getPixelY(float alpha) {
+        if (previousPixelUpdate != game.getUpdateCount()) return pixelY;
+        return previousPixelY + (pixelY - previousPixelY) * alpha;
+    }
+
+    //direction in which the creature faces, see direction
+    public int getDirection() {
+        return direction;
+    }
+
+    public char getModel() {
+        return model;
+    }
+
     public boolean isMyTurn() {
         return myTurn;
     }
@@ -343,6 +390,15 @@ public class Creature {
         return name;
     }
 
+    void setName(String name) {
+        this.name = name;
+        this.variant = (name.hashCode() & 0x7fffffff) % VARIANTS;
+    }
+
+    int getVariant() {
+        return variant;
+    }
+
     public int getHp() {
         return hp;
     }
@@ -363,8 +419,10 @@ public class Creature {
     }
 
     private void die() {
-        core.getGame().getTurnList().remove(this);
+        game.removeCreature(this);
+        game.getCreatureIndex().remove(this);
         ap = 0;
+        nextMoves = null;
         getTile().setCreature(null);
     }
 
@@ -373,7 +431,6 @@ public class Creature {
             //some reward
         }
         ap--;
-        movepool = calcMovePool();
     }
 
     public Inventory getInventory() {
@@ -0,0 +1,180 @@
+package de.tfour.main.java;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+//finds creatures by position without looking at every tile. the map is split into square cells of CELL_SIZE tiles and
+//every cell keeps a list of the creatures on it. a query only visits the cells it overlaps, so it costs about
+//the number of creatures found (plus the cells touched) no matter how big the map is.
+//creatures are added when created, moved along when they step and removed when they die (see Creature).
+//distances are counted in steps (|dx| + |dy|), like Tile.getTilesInRadius.
+class CreatureIndex {
+
+    static final int CELL_BITS = 3;
+    static final int CELL_SIZE = 1 << CELL_BITS;
+
+    //cells by cell index (cellX + cellY * cellsX), null until a creature enters the cell. sized by resize, together
+    //with the map.
+    private ArrayList<Creature>[] cells = newCells(0);
+    private int cellsX;
+    private int cellsY;
+    private int size;
+
+    //has to be called when the map changes its size. creatures that are not on the map anymore are dropped.
+    void resize(int width, int height) {
+        ArrayList<Creature> all = getAll(new ArrayList<>());
+        cellsX = (width + CELL_SIZE - 1) >> CELL_BITS;
+        cellsY = (height + CELL_SIZE - 1) >> CELL_BITS;
+        cells = newCells(cellsX * cellsY);
+        size = 0;
+        for (Creature c : all) {
+            if (c.getX() >= 0 && c.getY() >= 0 && c.getX() < width && c.getY() < height) add(c);
+        }
+    }
+
+    void add(Creature c) {
+        int key = key(c.getX(), c.getY());
+        if (key < 0) return;
+        getOrCreateCell(key).add(c);
+        size++;
+    }
+
+    void remove(Creature c) {
+        if (removeFromCell(c, key(c.getX(), c.getY()))) size--;
+    }
+
+    //has to be called after a creature changed its tile, with the tile it was on before
+    void move(Creature c, int oldX, int oldY) {
+        int from = key(oldX, oldY);
+        int to = key(c.getX(), c.getY());
+        if (from == to) return;
+        if (!removeFromCell(c, from)) return;
+        if (to < 0) {
+            size--;
+            return;
+        }
+        getOrCreateCell(to).add(c);
+    }
+
+    //creatures at most radius steps away from the tile, adding them to out. returns out.
+    ArrayList<Creature> inRadius(int x, int y, int radius, ArrayList<Creature> out) {
+        int lastX = Math.min(cellsX - 1, (x + radius) >> CELL_BITS);
+        int lastY = Math.min(cellsY - 1, (y + radius) >> CELL_BITS);
+        for (int cy = Math.max(0, (y - radius) >> CELL_BITS); cy <= lastY; cy++) {
+            for (int cx = Math.max(0, (x - radius) >> CELL_BITS); cx <= lastX; cx++) {
+                ArrayList<Creature> cell = cells[cy * cellsX + cx];
+                if (cell == null) continue;
+                for (int i = 0; i < cell.size(); i++) {
+                    Creature c = cell.get(i);
+                    if (distance(c, x, y) <= radius) out.add(c);
+                }
+            }
+        }
+        return out;
+    }
+
+    //creatures on the tiles from x0|y0 to x1|y1 (both inclusive), adding them to out. returns out.
+    ArrayList<Creature> inRect(int x0, int y0, int x1, int y1, ArrayList<Creature> out) {
+        int lastX = Math.min(cellsX - 1, x1 >> CELL_BITS);
+        int lastY = Math.min(cellsY - 1, y1 >> CELL_BITS);
+        for (int cy = Math.max(0, y0 >> CELL_BITS); cy <= lastY; cy++) {
+            for (int cx = Math.max(0, x0 >> CELL_BITS); cx <= lastX; cx++) {
+                ArrayList<Creature> cell = cells[cy * cellsX + cx];
+                if (cell == null) continue;
+                for (int i = 0; i < cell.size(); i++) {
+                    Creature c = cell.get(i);
+                    if (c.getX() >= x0 && c.getX() <= x1 && c.getY() >= y0 && c.getY() <= y1) out.add(c);
+                }
+            }
+        }
+        return out;
+    }
+
+    //the k creatures closest to the tile, closest first. fewer if there are not that many.
+    //the cells are searched in growing rings around the tile, until no unvisited cell can hold anything closer.
+    ArrayList<Creature> nearest(int x, int y, int k) {
+        ArrayList<Creature> found = new ArrayList<>();
+        if (k <= 0) return found;
+        int cellX = x >> CELL_BITS;
+        int cellY = y >> CELL_BITS;
+        for (int ring = 0; found.size() < size; ring++) {
+            for (int cy = cellY - ring; cy <= cellY + ring; cy++) {
+                if (cy < 0 || cy >= cellsY) continue;
+                //inner rows only have a cell on each side of the ring
+                int step = (cy == cellY - ring || cy == cellY + ring) ? 1 : Math.max(1, 2 * ring);
+                for (int cx = cellX - ring; cx <= cellX + ring; cx += step) {
+                    if (cx < 0 || cx >= cellsX) continue;
+                    ArrayList<Creature> cell = cells[cy * cellsX + cx];
+                    if (cell != null) found.addAll(cell);
+                }
+            }
+            //every tile outside of the rings searched so far is more than ring * CELL_SIZE steps away
+            if (found.size() >= k && kthDistance(found, x, y, k) <= ring * CELL_SIZE) break;
+        }
+        found.sort((a, b) -> Integer.compare(distance(a, x, y), distance(b, x, y)));
+        if (found.size() > k) found.subList(k, found.size()).clear();
+        return found;
+    }
+
+    void clear() {
+        for (ArrayList<Creature> cell : cells) {
+            if (cell != null) cell.clear();
+        }
+        size = 0;
+    }
+
+    //every creature in the index, cell by cell, adding them to out. returns out.
+    ArrayList<Creature> getAll(ArrayList<Creature> out) {
+        for (ArrayList<Creature> cell : cells) {
+            if (cell != null) out.addAll(cell);
+        }
+        return out;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private static int kthDistance(ArrayList<Creature> found, int x, int y, int k) {
+        int[] distances = new int[found.size()];
+        for (int i = 0; i < distances.length; i++) {
+            distances[i] = distance(found.get(i), x, y);
+        }
+        Arrays.sort(distances);
+        return distances[k - 1];
+    }
+
+    //the list of a cell is kept once created, even when it is empty again, so creatures walking back and forth
+    //between two cells do not allocate
+    private ArrayList<Creature> getOrCreateCell(int key) {
+        ArrayList<Creature> cell = cells[key];
+        if (cell == null) {
+            cell = new ArrayList<>(4);
+            cells[key] = cell;
+        }
+        return cell;
+    }
+
+    private boolean removeFromCell(Creature c, int key) {
+        if (key < 0) return false;
+        ArrayList<Creature> cell = cells[key];
+        return cell != null && cell.remove(c);
+    }
+
+    private static int distance(Creature c, int x, int y) {
+        return Math.abs(c.getX() - x) + Math.abs(c.getY() - y);
+    }
+
+    //the index of the cell that holds the tile, -1 if the tile is not on the map
+    private int key(int x, int y) {
+        int cx = x >> CELL_BITS;
+        int cy = y >> CELL_BITS;
+        if (x < 0 || y < 0 || cx >= cellsX || cy >= cellsY) return -1;
+        return cy * cellsX + cx;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArrayList<Creature>[] newCells(int count) {
+        return (ArrayList<Creature>[]) new ArrayList[count];
+    }
+}
@@ -0,0 +1,121 @@
+package de.tfour.main.java;
+
+import java.util.Arrays;
+
+//recursive shadowcasting field of view. opaque tiles cast shadows, everything inside the radius that is lit
+//gets its visible and seen bits set in the map. the result is kept until the viewer moves, the radius changes
+//or a tile within the radius is edited, so calling update() every frame is cheap.
+class FieldOfView {
+
+    //multipliers that map the first octant onto all eight
+    private static final int[][] OCTANTS = {
+            {1, 0, 0, -1, -1, 0, 0, 1},
+            {0, 1, -1, 0, 0, -1, 1, 0},
+            {0, 1, 1, 0, 0, -1, -1, 0},
+            {1, 0, 0, 1, -1, 0, 0, -1}
+    };
+
+    private final GameMap map;
+    private int radius;
+    private int viewerX = -1;
+    private int viewerY = -1;
+    private boolean dirty = true;
+
+    //indices of the tiles that are currently visible, so they can be hidden again without scanning the map
+    private int[] visibleTiles = new int[64];
+    private int visibleTileCount;
+
+    FieldOfView(GameMap map, int radius) {
+        this.map = map;
+        this.radius = radius;
+    }
+
+    void setRadius(int radius) {
+        if (this.radius == radius) return;
+        this.radius = radius;
+        dirty = true;
+    }
+
+    int getRadius() {
+        return radius;
+    }
+
+    //called by the map whenever a tile changes its type
+    void onTileChanged(int x, int y) {
+        if (Math.abs(x - viewerX) + Math.abs(y - viewerY) <= radius) dirty = true;
+    }
+
+    //forgets the current result, e.g. because a new map was loaded
+    void reset() {
+        visibleTileCount = 0;
+        dirty = true;
+    }
+
+    //recomputes the visible tiles if anything they depend on changed
+    void update(int x, int y) {
+        if (!dirty && x == viewerX && y == viewerY) return;
+        dirty = false;
+        viewerX = x;
+        viewerY = y;
+        for (int i = 0; i < visibleTileCount; i++) {
+            map.setVisible(visibleTiles[i], false);
+        }
+        visibleTileCount = 0;
+        reveal(x, y);
+        for (int[] m : OCTANTS) {
+            castLight(1, 1.0f, 0.0f, m[0], m[1], m[2], m[3]);
+            castLight(1, 1.0f, 0.0f, m[4], m[5], m[6], m[7]);
+        }
+    }
+
+    //scans one octant row by row, starting at the given row and between the start and end slope.
+    //whenever an opaque tile ends a lit section, the lit part is scanned further in a recursive call.
+    private void castLight(int row, float start, float end, int xx, int xy, int yx, int yy) {
+        if (start < end) return;
+        float newStart = 0;
+        for (int j = row; j <= radius; j++) {
+            int dx = -j - 1;
+            int dy = -j;
+            boolean blocked = false;
+            while (dx <= 0) {
+                dx++;
+                float leftSlope = (dx - 0.5f) / (dy + 0.5f);
+                float rightSlope = (dx + 0.5f) / (dy - 0.5f);
+                if (start < rightSlope) continue;
+                if (end > leftSlope) break;
+                int tx = viewerX + dx * xx + dy * xy;
+                int ty = viewerY + dx * yx + dy * yy;
+                if (Math.abs(dx) + Math.abs(dy) <= radius) reveal(tx, ty);
+                boolean opaque = isOpaque(tx, ty);
+                if (blocked) {
+                    if (opaque) {
+                        newStart = rightSlope;
+                    } else {
+                        blocked = false;
+                        start = newStart;
+                    }
+                } else if (opaque && j < radius) {
+                    blocked = true;
+                    castLight(j + 1, start, leftSlope, xx, xy, yx, yy);
+                    newStart = rightSlope;
+                }
+            }
+            if (blocked) break;
+        }
+    }
+
+    private boolean isOpaque(int x, int y) {
+        if (x < 0 || y < 0 || x >= map.getWidth() || y >= map.getHeight()) return true;
+        return map.getType(map.index(x, y)).isOpaque();
+    }
+
+    private void reveal(int x, int y) {
+        if (x < 0 || y < 0 || x >= map.getWidth() || y >= map.getHeight()) return;
+        int i = map.index(x, y);
+        if (map.isVisible(i)) return;
+        map.setVisible(i, true);
+        map.setSeen(i, true);
+        if (visibleTileCount == visibleTiles.length) visibleTiles = Arrays.copyOf(visibleTiles, visibleTileCount * 2);
+        visibleTiles[visibleTileCount++] = i;
+    }
+}
@@ -0,0 +1,104 @@
+package de.tfour.main.java;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+//measures how long every phase of a frame takes, in nanoseconds. the last WINDOW frames are kept per phase, so
+//percentiles over the recent past can be shown while playing (see GameRenderer's debug mode).
+//a trace of the next frames can also be recorded and written to a csv file, one row per frame.
+//a phase that runs several times in one frame (e.g. game updates without a renderer) is added up.
+class FrameProfiler {
+
+    enum Phase {
+        TURN_LOGIC, MOVEMENT, TILE_VISIBILITY, DRAW_TILES, DRAW_ITEMS_AND_CREATURES, DRAW_WORLD_OVERLAY, DRAW_OVERLAY, DRAW_INFO
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    //number of frames the percentiles are computed over
+    static final int WINDOW = 240;
+
+    //time of every phase in the frame that is running, the last column is the whole frame
+    private final long[] current = new long[PHASES.length + 1];
+    private final long[] started = new long[PHASES.length];
+    private long frameStarted;
+    //ring buffer of the last WINDOW frames per phase
+    private final long[][] samples = new long[PHASES.length + 1][WINDOW];
+    private int frameCount;
+    private final long[] sorted = new long[WINDOW];
+
+    //frames recorded for a csv trace, null while no trace is running
+    private long[][] trace;
+    private int tracedFrames;
+    private File traceFile;
+
+    void beginFrame() {
+        frameStarted = System.nanoTime();
+    }
+
+    void begin(Phase phase) {
+        started[phase.ordinal()] = System.nanoTime();
+    }
+
+    void end(Phase phase) {
+        current[phase.ordinal()] += System.nanoTime() - started[phase.ordinal()];
+    }
+
+    void endFrame() {
+        current[PHASES.length] = System.nanoTime() - frameStarted;
+        int slot = frameCount % WINDOW;
+        for (int i = 0; i < current.length; i++) {
+            samples[i][slot] = current[i];
+        }
+        frameCount++;
+        if (trace != null) {
+            trace[tracedFrames++] = current.clone();
+            if (tracedFrames == trace.length) writeTrace();
+        }
+        Arrays.fill(current, 0);
+    }
+
+    //the time in nanoseconds that the given share (0 to 1) of the recent frames stayed below, for a phase or the
+    //whole frame (phase null)
+    long getPercentile(Phase phase, double p) {
+        int n = Math.min(frameCount, WINDOW);
+        if (n == 0) return 0;
+        System.arraycopy(samples[phase == null ? PHASES.length : phase.ordinal()], 0, sorted, 0, n);
+        Arrays.sort(sorted, 0, n);
+        return sorted[Math.min(n - 1, (int) (p * n))];
+    }
+
+    //records the next frames and writes them to the file once there are enough of them
+    void startTrace(int frames, File file) {
+        trace = new long[frames][];
+        tracedFrames = 0;
+        traceFile = file;
+    }
+
+    boolean isTracing() {
+        return trace != null;
+    }
+
+    private void writeTrace() {
+        try (PrintWriter out = new PrintWriter(new FileWriter(traceFile))) {
+            StringBuilder header = new StringBuilder("frame");
+            for (Phase phase : PHASES) {
+                header.append(',').append(phase.name().toLowerCase());
+            }
+            out.println(header.append(",frame_total"));
+            for (int f = 0; f < tracedFrames; f++) {
+                StringBuilder row = new StringBuilder().append(f);
+                for (long nanos : trace[f]) {
+                    row.append(',').append(nanos);
+                }
+                out.println(row);
+            }
+            System.out.println("Wrote frame trace to " + traceFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        trace = null;
+    }
+}
@@ -1,340 +1,443 @@
 package de.tfour.main.java;
 
-import processing.core.PApplet;
-import processing.core.PConstants;
-
+import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.List;
 
+//the game state and its rules. nothing in here needs processing or a window: GameRenderer draws the state and feeds
+//input in as InputEvents, while Headless runs turns without any of that.
 public class Game {
 
-    private final Core core;
     private Player player;
 
-    //speech info
-    private final ArrayList<String> bubbleText = new ArrayList<>();
-    private final int bubbleDelay = 3;
-    private int speechSecondsRemaining = 0;
-    private int lastSecond = -1;
+    //speech bubble texts that have not been picked up by the renderer yet
+    private final ArrayDeque<String> messages = new ArrayDeque<>();
+    private static final int MAX_MESSAGES = 16;
 
     private boolean manualMovementAllowed = true;
     private Creature toMove;
-    private ArrayList<Creature> turnList;
+    private final TurnScheduler scheduler = new TurnScheduler();
+    //every creature on the map by position, including ones that do not take turns
+    private final CreatureIndex creatureIndex = new CreatureIndex();
+    //creatures that still have moves to make or are in the middle of a step. usually just the one whose turn it is.
+    private final ArrayList<Creature> movingCreatures = new ArrayList<>();
+    //creatures sleep (see TurnScheduler) while they are more than this many chunks away from the player's chunk
+    static final int DORMANT_CHUNK_DISTANCE = 1;
+    private int playerChunkX = -1;
+    private int playerChunkY = -1;
+    //number of turns that have started so far
+    private long turnCount;
+    //number of calls to update() so far
+    private long updateCount;
 
-    private final int backgroundColor;
-    public static float theta = 0.0f;
     private GameModes mode;
+    //whether creatures walk from tile to tile over several updates. without animation a step finishes in one update.
+    private boolean animated = true;
+    //whether the player plays its turns on its own like an ai creature, e.g. when nobody gives input
+    private boolean autoPlayer;
+    private final long seed;
+    //the random source of the game rules, and a separate one for things that only change how the game looks
+    private final GameRandom random;
+    private final GameRandom effectsRandom;
+    //writes the input and regular checksums to a file while a session is recorded, see Replay
+    private InputRecorder recorder;
+    private final TurnPlanner planner = new TurnPlanner(this);
+    //times the phases of every frame, the renderer adds its own
+    private final FrameProfiler profiler = new FrameProfiler();
+    //number of frames a trace started with P in debug mode records
+    private static final int TRACE_FRAMES = 600;
+    //the search for a clicked tile gives up after this many tiles, twice as many as lie within
+    //GameMap.HIERARCHICAL_PATH_DISTANCE of the player, e.g. when the tile is walled in
+    private static final int CLICK_SEARCH_TILES = 4 * GameMap.HIERARCHICAL_PATH_DISTANCE * GameMap.HIERARCHICAL_PATH_DISTANCE;
+    private final SaveGame saveGame = new SaveGame(this);
 
     //build mode vars
-    private Tile buildModeTile;
+    private TileType buildModeTile;
     private final GameMap map;
 
-    private String consoleText = "";
-    private boolean consoleOn;
-
-    private boolean inventoryOpen;
-    public static boolean ignoreFog = true;
-    public static boolean ignoreVisibility = true;
+    //scratch buffer for neighbour queries on the map
+    private final int[] neighbourBuffer = new int[4];
 
     public enum GameModes {
         PLAY, DEBUG, PLACE, BUILD
     }
 
-    public Game(Core core) {
-        this.core = core;
-        this.map = new GameMap(core);
-        backgroundColor = core.color(0);
+    public Game() {
+        this(System.nanoTime());
+    }
+
+    //a game whose random decisions (e.g. ai movement) are the same on every run with the same seed
+    public Game(long seed) {
+        this.seed = seed;
+        GameRandom root = new GameRandom(seed);
+        this.random = root.split();
+        this.effectsRandom = root.split();
+        this.map = new GameMap(this);
     }
 
     public void setup() {
+        map.loadMap("map");
+
+        Item.create(this, 3, 3, 'i');
+        placePlayer(5, 5);
+        addCreature(2, 2, 'B');
+        addCreature(2, 14, 'B');
+        addCreature(11, 2, 'B');
+        start();
+    }
+
+    //creates the player and puts it first in the turn order. the map has to be loaded already.
+    public Player placePlayer(int x, int y) {
         this.mode = GameModes.PLAY;
-        this.buildModeTile = new Tile(core, -1, -1, 0);
+        this.buildModeTile = TileType.get(0);
+        player = Player.create(this, x, y);
+        scheduler.add(player);
+        return player;
+    }
 
-        map.loadMap("map");
+    //creates a creature that takes part in the turn order
+    public Creature addCreature(int x, int y, char model) {
+        Creature c = Creature.create(this, x, y, model);
+        scheduler.add(c);
+        return c;
+    }
 
-        Item.create(core, 3, 3, 'i');
-        player = Player.create(core, 5, 5);
-        turnList = new ArrayList<>();
-        turnList.add(player);
-        turnList.add(Creature.create(core, 2, 2, 'B'));
-        turnList.add(Creature.create(core, 2, 14, 'B'));
-        turnList.add(Creature.create(core, 11, 2, 'B'));
+    //starts the first turn, after the player and the other creatures have been placed
+    public void start() {
+        map.updateFlowField(player.getTile());
         nextTurn();
         map.updateTileVisibility();
-        map.updateSeenTilesPercentage();
+        //the chunks right around the player were needed above already, the ones further out follow in the background
+        map.prefetchChunks(player.getX() >> Chunk.BITS, player.getY() >> Chunk.BITS);
     }
 
-    public void draw() {
-        //update
-        theta += 0.1f;
-        core.translate(0, 1.5f * Tile.WIDTH);
-        core.getSurface().setTitle("TestGame, FPS: " + Math.round(core.frameRate));
-        if (mode == GameModes.BUILD) {
-            drawBuildMode();
-            return;
-        }
+    //advances the game by one step: plans the turn of the creature to move and moves creatures along their paths.
+    //GameLoop calls this at a fixed rate, headless runs call it in a loop.
+    public void update() {
+        updateCount++;
+        map.installPrefetchedChunks();
+        if (mode == GameModes.BUILD) return;
+        profiler.begin(FrameProfiler.Phase.TURN_LOGIC);
         turnLogic();
-        //draw
-        drawBackground();
-        if (inventoryOpen) {
-            drawInventory();
-        } else {
-            map.drawTiles();
-            map.updateTileVisibility();
-            map.drawItemsAndCreatures();
-            drawOverlay();
+        profiler.end(FrameProfiler.Phase.TURN_LOGIC);
+        profiler.begin(FrameProfiler.Phase.MOVEMENT);
+        if (!movingCreatures.contains(toMove)) movingCreatures.add(toMove);
+        for (int i = movingCreatures.size() - 1; i >= 0; i--) {
+            Creature c = movingCreatures.get(i);
+            updateCreature(c);
+            boolean done = !c.isMoving() && (c.getNextMoves() == null || c.getNextMoves().isEmpty());
+            if (done && c != toMove) movingCreatures.remove(i);
         }
-        drawInfo();
+        profiler.end(FrameProfiler.Phase.MOVEMENT);
+        profiler.begin(FrameProfiler.Phase.TILE_VISIBILITY);
+        map.updateTileVisibility();
+        profiler.end(FrameProfiler.Phase.TILE_VISIBILITY);
+        if (recorder != null) recorder.updated();
     }
 
     private void turnLogic() {
         if (toMove.getAp() == 0) {
             nextTurn();
         }
-        if (!(toMove instanceof Player) && (toMove.getNextMoves() == null || toMove.getNextMoves().isEmpty())) {
+        boolean idle = toMove.getNextMoves() == null || toMove.getNextMoves().isEmpty();
+        if (idle && toMove.isFollowingPlan()) {
+            //all planned moves are made
+            nextTurn();
+        } else if (idle && (!(toMove instanceof Player) || autoPlayer)) {
             toMove.randomTurn();
         }
         manualMovementAllowed = player.isMyTurn();
     }
 
-    private void drawInventory() {
-        for (Item i : player.getInventory().getItems()) {
-
+    private void updateCreature(Creature c) {
+        if (c.getNextMoves() != null && !c.getNextMoves().isEmpty() && !c.isMoving()) {
+            Tile next = c.getNextMoves().remove(0);
+            if (c.isFollowingPlan() && !map.isViable(next.getIndex())) {
+                //someone got in the way since the turn was planned (e.g. a faster creature), the rest of the plan is dropped
+                c.getNextMoves().clear();
+            } else {
+                c.move(next);
+            }
         }
+        c.update();
     }
 
-    private void drawBuildMode() {
-        drawBackground();
-        map.drawTiles();
-        core.noStroke();
-        buildModeTile.drawAt((int) (Tile.WIDTH / 2), (int) (-1.5f * Tile.WIDTH), 1);
-        core.stroke(1);
-        buildModeTile.drawAt(core.mouseX, (int) (core.mouseY - 1.5f * Tile.WIDTH), 0.75f);
-        core.textAlign(PConstants.LEFT, PConstants.CENTER);
-        core.text("Current Tile: " + buildModeTile.getName(), Tile.WIDTH * 2, -1.5f * Tile.WIDTH + Tile.WIDTH / 2);
+    public void sendTextBubble(String text) {
+        //nobody reads the messages in headless runs, so old ones are dropped instead of piling up
+        if (messages.size() == MAX_MESSAGES) messages.poll();
+        messages.add(text);
     }
 
-    private void drawBackground() {
-        switch (mode) {
-            case DEBUG:
-                core.background(127);
-                break;
-            case PLACE:
-                core.background(core.color(0, 255, 0));
-                break;
-            case BUILD:
-                core.background(core.color(255));
-                break;
-            case PLAY:
-                core.background(backgroundColor);
-                break;
-        }
+    //the oldest speech bubble text that has not been shown yet, or null
+    public String pollMessage() {
+        return messages.poll();
     }
 
-    private void drawOverlay() {
-        //fog
-        Arrays.stream(map.getTiles()).flatMap(Arrays::stream).filter(tile -> !tile.isVisible()).forEachOrdered(Tile::drawFog);
-        //handle speechBubble drawing
-        if (speechSecondsRemaining == 0 && !bubbleText.isEmpty()) {
-            bubbleText.remove(0);
-            speechSecondsRemaining = bubbleDelay;
-        }
-        int bubbleNum = 0;
-        for (String text : bubbleText) {
-            drawTextBubble(text, bubbleNum);
-            bubbleNum++;
-        }
-        //draw player movepool
-        if (player.isMyTurn()) {
-            for (Tile t : player.getMovepool()) {
-                if (t.isVisible()) {
-                    //core.fill(255, 50);
-                    core.noFill();
-                    core.stroke(255, 50);
-                    core.ellipse(t.getX() * Tile.WIDTH + Tile.WIDTH / 2, t.getY() * Tile.WIDTH + Tile.WIDTH / 2, Tile.WIDTH * 0.6f, Tile.WIDTH * 0.6f);
-                    //core.rect(t.getX() * Tile.WIDTH, t.getY() * Tile.WIDTH, Tile.WIDTH, Tile.WIDTH);
-                }
-            }
-        }
-        //draw enemies in reach
-        for (Tile t : player.getTile().getNeighboursWithCreatures()) {
-            core.noFill();
-            core.stroke(255, 0, 0);
-            core.ellipse(t.getX() * Tile.WIDTH + Tile.WIDTH / 2, t.getY() * Tile.WIDTH + Tile.WIDTH / 2, Tile.WIDTH * 0.9f, Tile.WIDTH * 0.9f);
-
-        }
-        //draws player path
-        if (mode == GameModes.DEBUG && player.getNextMoves() != null) {
-            for (Tile t : player.getNextMoves()) {
-                core.fill(255, 0, 0);
-                core.rect(t.getX() * Tile.WIDTH, t.getY() * Tile.WIDTH, Tile.WIDTH, Tile.WIDTH);
-            }
-        }
+    private int counter = 0;
 
-        //console
-        if (consoleOn) {
-            core.textAlign(PConstants.LEFT, PConstants.CENTER);
-            core.fill(255);
-            core.text(consoleText, 10, core.height / 2);
+    public void handleInput(InputEvent e) {
+        if (recorder != null) recorder.record(e);
+        if (e.getType() == InputEvent.Type.CLICK) {
+            handleClick(e.getTileX(), e.getTileY(), e.getButton());
+            return;
         }
-    }
-
-    private void drawInfo() {
-        core.fill(255);
-        //white hp bar
-        core.rect(Tile.WIDTH * 8, -Tile.WIDTH, Tile.WIDTH * 4, Tile.WIDTH / 4);
-        core.textAlign(PConstants.LEFT, PConstants.CENTER);
-        core.text("AP: " + player.getAp(), Tile.WIDTH / 2, -1.5f * Tile.WIDTH + Tile.WIDTH / 2);
-        core.text("Map: " + map.getSeenTilesPercentage() + "%", Tile.WIDTH * 12.5f, -1.5f * Tile.WIDTH + Tile.WIDTH / 2);
-        core.textAlign(PConstants.RIGHT, PConstants.CENTER);
-        core.text("HP: 000/000", Tile.WIDTH * 7.5f, -Tile.WIDTH);
-        String turnbutton = player.myTurn ? "End Turn" : "AI Turn";
-        core.text(turnbutton, 19 * Tile.WIDTH + Tile.WIDTH / 2, -1.5f * Tile.WIDTH + Tile.WIDTH / 2);
-        if (core.mouseX > 16 * Tile.WIDTH && core.mouseY < Tile.WIDTH && toMove.equals(player)) {
-            core.fill(255, 255, 120);
-            core.text(turnbutton, 19 * Tile.WIDTH + Tile.WIDTH / 2 + 1, -1.5f * Tile.WIDTH + Tile.WIDTH / 2 + 1);
+        char key = e.getKey();
+        if (key == '1') mode = (mode != GameModes.DEBUG) ? GameModes.DEBUG : GameModes.PLAY;
+        if (key == '2') mode = (mode != GameModes.PLACE) ? GameModes.PLACE : GameModes.PLAY;
+        if (key == '3') mode = (mode != GameModes.BUILD) ? GameModes.BUILD : GameModes.PLAY;
+        if (manualMovementAllowed) {
+            if (key == 'W' || key == 'w') player.move(0);
+            if (key == 'A' || key == 'a') player.move(1);
+            if (key == 'S' || key == 's') player.move(2);
+            if (key == 'D' || key == 'd') player.move(3);
         }
-        //green hp bar
-        core.fill(0, 255, 0);
-        core.rect(Tile.WIDTH * 8, -Tile.WIDTH, PApplet.map(player.getHp(), 0, player.getHpMax(), 0, Tile.WIDTH * 4), Tile.WIDTH / 4);
-    }
-
-    private void drawTextBubble(String text, int bubbleNumber) {
-        @SuppressWarnings("SuspiciousNameCombination") float yOffset = Tile.WIDTH;
-        float yOffComputed = yOffset * bubbleNumber;
-        float y = 15.5f;
-        core.fill(255);
-        core.triangle(
-                Tile.WIDTH / 3, y * Tile.WIDTH - yOffComputed + Tile.WIDTH / 4,
-                Tile.WIDTH * 2 / 3, y * Tile.WIDTH - yOffComputed + Tile.WIDTH / 4,
-                Tile.WIDTH / 2, y * Tile.WIDTH + Tile.WIDTH / 2 - yOffComputed);
-        core.rect(0, (y - 0.75f) * Tile.WIDTH - yOffComputed + Tile.WIDTH / 4, core.textWidth(text), Tile.WIDTH * 3 / 4);
-        core.fill(0);
-        core.textAlign(PConstants.LEFT);
-        core.text(text, 0f, y * Tile.WIDTH - Tile.WIDTH * 1 / 8 - yOffComputed + Tile.WIDTH / 4);
-        if (PApplet.second() != lastSecond) {
-            speechSecondsRemaining--;
-            lastSecond = PApplet.second();
+        if ((key == 'E' || key == 'e') && player.isMyTurn()) nextTurn();
+        if (key == 'N' || key == 'n') nextTurn();
+        if (key == 'S' || key == 's') map.saveMap();
+        if (key == 'T' || key == 't') map.exportText();
+        if (key == 'Q' || key == 'q') {
+            saveGame.save(SaveGame.QUICKSAVE);
+            sendTextBubble("Saved");
         }
-        core.stroke(255, 0, 0);
-        core.noStroke();
-    }
-
-    private void sendTextBubble(String text, int seconds) {
-        bubbleText.add(text);
-        speechSecondsRemaining = seconds;
-    }
-
-    public void sendTextBubble(String text) {
-        sendTextBubble(text, bubbleDelay);
-    }
-
-    private int counter = 0;
-
-    public void handleInput() {
-        //handle mouse press
-        if (core.mousePressed) {
-            handleMouseInput();
+        if (key == 'L' || key == 'l') {
+            if (saveGame.load(SaveGame.QUICKSAVE)) sendTextBubble("Loaded");
         }
-        //handle keyboard input
-        if (core.keyPressed) {
-            if (core.key == '<') {
-                consoleOn = !consoleOn;
-            }
-            if (consoleOn) {
-                if (core.keyCode == PConstants.BACKSPACE) {
-                    consoleText = consoleText.substring(0, consoleText.length() - 1);
-                } else {
-                    if (core.key != '<') {
-                        consoleText += core.key;
-                    }
-                }
-            }
-            if (core.key == '1') mode = (mode != GameModes.DEBUG) ? GameModes.DEBUG : GameModes.PLAY;
-            if (core.key == '2') mode = (mode != GameModes.PLACE) ? GameModes.PLACE : GameModes.PLAY;
-            if (core.key == '3') mode = (mode != GameModes.BUILD) ? GameModes.BUILD : GameModes.PLAY;
-            if (manualMovementAllowed) {
-                if (core.key == 'W' || core.key == 'w') player.move(0);
-                if (core.key == 'A' || core.key == 'a') player.move(1);
-                if (core.key == 'S' || core.key == 's') player.move(2);
-                if (core.key == 'D' || core.key == 'd') player.move(3);
-            }
-            if ((core.key == 'E' || core.key == 'e') && player.isMyTurn()) nextTurn();
-            if (core.key == 'N' || core.key == 'n') nextTurn();
-            if (core.key == 'S' || core.key == 's') map.saveMap();
+        if ((key == 'P' || key == 'p') && mode == GameModes.DEBUG && !profiler.isTracing()) {
+            profiler.startTrace(TRACE_FRAMES, new File("frames" + System.currentTimeMillis() + ".csv"));
+            sendTextBubble("Tracing " + TRACE_FRAMES + " frames");
         }
-
     }
 
-    private void handleMouseInput() {
-        int posX = (int) (core.mouseX / Tile.WIDTH);
-        int posY = (int) (core.mouseY / Tile.WIDTH - 1.5f);
+    private void handleClick(int posX, int posY, InputEvent.Button button) {
         Tile clickedTile = map.getTile(posX, posY);
 
         switch (mode) {
             case BUILD:
-                switch (core.mouseButton) {
-                    case PConstants.LEFT:
-                        map.setTile(posX, posY, new Tile(core, posX, posY, buildModeTile.getId()));
+                switch (button) {
+                    case LEFT:
+                        map.setTile(posX, posY, buildModeTile.getId());
                         break;
-                    case PConstants.RIGHT:
+                    case RIGHT:
                         int id = buildModeTile.getId();
                         id++;
                         if (id > Tile.HIGHEST_ID) id = 0;
-                        buildModeTile = new Tile(core, -1, -1, id);
+                        buildModeTile = TileType.get(id);
                         break;
-                    case PConstants.CENTER:
-                        buildModeTile = new Tile(core, -1, -1, clickedTile.getId());
+                    case CENTER:
+                        if (clickedTile != null) buildModeTile = clickedTile.getType();
                         break;
                 }
                 break;
             case PLACE:
-                switch (core.mouseButton) {
-                    case PConstants.LEFT:
-                        Creature.create(core, posX, posY, 'x');
+                switch (button) {
+                    case LEFT:
+                        Creature.create(this, posX, posY, 'x');
                         break;
-                    case PConstants.RIGHT:
-                        Item.create(core, posX, posY, 'i');
+                    case RIGHT:
+                        Item.create(this, posX, posY, 'i');
                         break;
-                    case PConstants.CENTER:
+                    case CENTER:
                         //currently unused
                         break;
                 }
                 break;
             case DEBUG:
-                if (core.mouseButton == PConstants.CENTER) {
+                if (button == InputEvent.Button.CENTER) {
                     sendTextBubble("test" + counter);
                     counter++;
                 }
             case PLAY:
                 if (player.isMyTurn()) {
-                    if (player.getTile().getNeighboursWithCreatures().contains(clickedTile)) {
+                    if (isEnemyInReach(clickedTile)) {
                         player.attack(clickedTile.getCreature());
                     } else if (player.getMovepool().contains(clickedTile)) {
-                        player.setNextMoves(map.astar(player.getTile(), clickedTile));
-                    } else if ((core.mouseX > (16 * Tile.WIDTH)) && (core.mouseY < Tile.WIDTH) && (core.mouseButton == PConstants.LEFT)) {
-                        nextTurn();
-                    } else if (clickedTile!=null) {
-                        sendTextBubble("Not enough AP!");
+                        player.setNextMoves(map.findPath(player.getTile(), clickedTile));
+                    } else if (clickedTile != null) {
+                        walkTowards(clickedTile);
                     }
                 }
                 break;
         }
     }
 
+    //a goal out of reach: the player walks along the path to it as far as the ap go this turn. far goals are found
+    //on the hierarchical graph (see GameMap.findPath).
+    private void walkTowards(Tile goal) {
+        if (player.getAp() <= 0) {
+            sendTextBubble("Not enough AP!");
+            return;
+        }
+        ArrayList<Tile> path = map.findPath(player.getTile(), goal, CLICK_SEARCH_TILES);
+        if (path == null || path.isEmpty()) {
+            sendTextBubble("No way there!");
+            return;
+        }
+        ArrayList<Tile> moves = new ArrayList<>();
+        //beyond the first chunk the path only knows the terrain, it ends before the first creature in the way
+        for (int i = 0; i < path.size() && moves.size() < player.getAp() && map.isViable(path.get(i).getIndex()); i++) {
+            moves.add(path.get(i));
+        }
+        if (moves.isEmpty()) {
+            sendTextBubble("The way is blocked!");
+            return;
+        }
+        player.setNextMoves(moves);
+    }
+
+    private boolean isEnemyInReach(Tile clickedTile) {
+        if (clickedTile == null) return false;
+        int enemies = map.getOccupiedNeighbours(map.index(player.getX(), player.getY()), neighbourBuffer);
+        for (int i = 0; i < enemies; i++) {
+            if (neighbourBuffer[i] == map.index(clickedTile.getX(), clickedTile.getY())) return true;
+        }
+        return false;
+    }
+
     public void nextTurn() {
         if (toMove != null)
             toMove.endTurn();
-        toMove = turnList.get(0);
+        //the player's turn ended, so a new ai round starts. all creatures share one flow field towards the player
+        //and plan their turns together.
+        if (toMove == player) {
+            map.updateFlowField(player.getTile());
+            planner.planRound(updateDormancy());
+        }
+        Creature next = scheduler.next();
+        //everyone is gone
+        if (next == null) return;
+        toMove = next;
+        turnCount++;
         toMove.startTurn();
-        Collections.rotate(turnList, 1);
+    }
+
+    //wakes the creatures close to the player and puts the far away ones that would move before the player's next turn
+    //to sleep. returns the ones that stay awake, in turn order.
+    private List<Creature> updateDormancy() {
+        int chunkX = player.getX() >> Chunk.BITS;
+        int chunkY = player.getY() >> Chunk.BITS;
+        if (chunkX != playerChunkX || chunkY != playerChunkY) {
+            playerChunkX = chunkX;
+            playerChunkY = chunkY;
+            map.prefetchChunks(chunkX, chunkY);
+            for (int cy = chunkY - DORMANT_CHUNK_DISTANCE; cy <= chunkY + DORMANT_CHUNK_DISTANCE; cy++) {
+                for (int cx = chunkX - DORMANT_CHUNK_DISTANCE; cx <= chunkX + DORMANT_CHUNK_DISTANCE; cx++) {
+                    if (cx >= 0 && cy >= 0 && cx < map.getChunksX() && cy < map.getChunksY()) {
+                        scheduler.wake(cy * map.getChunksX() + cx);
+                    }
+                }
+            }
+        }
+        List<Creature> upcoming = scheduler.getTurnsBefore(player);
+        for (int i = upcoming.size() - 1; i >= 0; i--) {
+            Creature c = upcoming.get(i);
+            int cx = c.getX() >> Chunk.BITS;
+            int cy = c.getY() >> Chunk.BITS;
+            if (Math.max(Math.abs(cx - chunkX), Math.abs(cy - chunkY)) > DORMANT_CHUNK_DISTANCE) {
+                scheduler.sleep(c, cy * map.getChunksX() + cx);
+                upcoming.remove(i);
+            }
+        }
+        return upcoming;
+    }
+
+    //forgets every creature, before the state of a savegame is put back. the map has to be replaced as well.
+    void clearCreatures(long schedulerNow, long schedulerSequence) {
+        scheduler.clear(schedulerNow, schedulerSequence);
+        creatureIndex.clear();
+        movingCreatures.clear();
+        toMove = null;
+        player = null;
+        playerChunkX = -1;
+        playerChunkY = -1;
+    }
+
+    //puts back the state of the game itself once the map and the creatures of a savegame are restored
+    void restore(long turnCount, GameModes mode, Player player, Creature toMove) {
+        this.turnCount = turnCount;
+        this.mode = mode;
+        this.player = player;
+        this.toMove = toMove;
+        if (buildModeTile == null) buildModeTile = TileType.get(0);
+        manualMovementAllowed = player.isMyTurn();
+        map.updateFlowField(player.getTile());
+        map.updateTileVisibility();
+        map.prefetchChunks(player.getX() >> Chunk.BITS, player.getY() >> Chunk.BITS);
+    }
+
+    //takes a creature out of the game's turn order, e.g. because it died
+    public void removeCreature(Creature c) {
+        scheduler.remove(c);
     }
 
     public GameModes getMode() {
         return mode;
     }
 
+    public TileType getBuildModeTile() {
+        return buildModeTile;
+    }
+
+    public boolean isAnimated() {
+        return animated;
+    }
+
+    public void setAnimated(boolean animated) {
+        this.animated = animated;
+    }
+
+    //whether the ai turns of a round are planned on several threads. the result is the same either way.
+    public void setParallelPlanning(boolean parallel) {
+        planner.setParallel(parallel);
+    }
+
+    public void setAutoPlayer(boolean autoPlayer) {
+        this.autoPlayer = autoPlayer;
+    }
+
+    //the random source of the game rules
+    public GameRandom getRandom() {
+        return random;
+    }
+
+    //the random source for effects that do not change what happens in the game, so using it never does either
+    public GameRandom getEffectsRandom() {
+        return effectsRandom;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    //records every input and a checksum every now and then, until the recorder is set to null again
+    public void setRecorder(InputRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public boolean isAutoPlayer() {
+        return autoPlayer;
+    }
+
+    //a hash of where every creature that takes turns is. two runs that went the same way have the same checksum.
+    //the creatures' hashes are added up, so the order the scheduler keeps them in (which depends on how they got
+    //there, e.g. through loading a savegame) does not matter.
+    public long getChecksum() {
+        long checksum = 0;
+        for (Creature c : getCreatures()) {
+            long h = map.index(c.getX(), c.getY()) * 0x9E3779B97F4A7C15L;
+            checksum += h ^ (h >>> 29);
+        }
+        return checksum;
+    }
+
+    public long getTurnCount() {
+        return turnCount;
+    }
+
+    public long getUpdateCount() {
+        return updateCount;
+    }
+
     public void setManualMovementAllowed(boolean manualMovementAllowed) {
         this.manualMovementAllowed = manualMovementAllowed;
     }
@@ -347,8 +450,25 @@ public class Game {
         return toMove;
     }
 
-    public ArrayList<Creature> getTurnList() {
-        return turnList;
+    //all creatures that take turns, including sleeping ones
+    public ArrayList<Creature> getCreatures() {
+        return scheduler.getCreatures();
+    }
+
+    TurnScheduler getScheduler() {
+        return scheduler;
+    }
+
+    SaveGame getSaveGame() {
+        return saveGame;
+    }
+
+    FrameProfiler getProfiler() {
+        return profiler;
+    }
+
+    CreatureIndex getCreatureIndex() {
+        return creatureIndex;
     }
 
     public Player getPlayer() {
@@ -358,4 +478,4 @@ public class Game {
     public GameMap getMap() {
         return map;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,106 @@
+package de.tfour.main.java;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+//runs Game.update() at a fixed rate of TICKS_PER_SECOND, no matter how often the window is drawn. a slow frame is
+//caught up with several updates, a fast one draws the state between the last two updates (see getAlpha()).
+//the loop either advances whenever the renderer asks it to, or runs on its own thread. in that case every update
+//holds the lock, and so does the renderer while it reads the game state, so it never sees half an update.
+//input is queued and handed to the game right before the next update, on the thread that runs the updates.
+public class GameLoop {
+
+    static final int TICKS_PER_SECOND = 60;
+    static final long TICK_NANOS = 1000000000L / TICKS_PER_SECOND;
+    //a frame that took too long is caught up with at most this many updates, after that the game slows down instead
+    private static final int MAX_TICKS_PER_ADVANCE = 8;
+    //the game is autosaved once a minute
+    private static final int AUTOSAVE_TICKS = 60 * TICKS_PER_SECOND;
+
+    private final Game game;
+    private final Object lock = new Object();
+    private final ConcurrentLinkedQueue<InputEvent> input = new ConcurrentLinkedQueue<>();
+    //when the next update is due, in System.nanoTime()
+    private long nextTick;
+    private Thread thread;
+    private volatile boolean running;
+
+    public GameLoop(Game game) {
+        this.game = game;
+        this.nextTick = System.nanoTime();
+    }
+
+    //runs the updates that are due by now. only used while the loop does not have its own thread.
+    public void advance() {
+        synchronized (lock) {
+            long now = System.nanoTime();
+            int ticks = 0;
+            while (now - nextTick >= 0) {
+                if (ticks == MAX_TICKS_PER_ADVANCE) {
+                    nextTick = now;
+                    break;
+                }
+                tick();
+                nextTick += TICK_NANOS;
+                ticks++;
+            }
+        }
+    }
+
+    private void tick() {
+        for (InputEvent e = input.poll(); e != null; e = input.poll()) {
+            game.handleInput(e);
+        }
+        game.update();
+        if (game.getUpdateCount() % AUTOSAVE_TICKS == 0) game.getSaveGame().autosave();
+    }
+
+    //hands input to the game with the next update
+    public void post(InputEvent e) {
+        input.add(e);
+    }
+
+    //how far the time is between the last update (0) and the next one (1)
+    public float getAlpha() {
+        float alpha = 1 - (float) (nextTick - System.nanoTime()) / TICK_NANOS;
+        return Math.max(0, Math.min(1, alpha));
+    }
+
+    //held by every update. whoever reads the game state from another thread has to hold it too.
+    public Object getLock() {
+        return lock;
+    }
+
+    //runs the updates on a thread of their own, so the game keeps its pace however slow drawing is
+    public void start() {
+        if (running) return;
+        running = true;
+        nextTick = System.nanoTime();
+        thread = new Thread(new Runnable() {
+            public void run() {
+                while (running) {
+                    advance();
+                    long wait = nextTick - System.nanoTime();
+                    if (wait > 0) LockSupport.parkNanos(wait);
+                }
+            }
+        }, "GameLoop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (thread == null) return;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        thread = null;
+    }
+
+    public boolean isThreaded() {
+        return running;
+    }
+}
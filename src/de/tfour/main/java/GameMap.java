@@ -1,170 +1,793 @@
 package de.tfour.main.java;
 
-import processing.core.PApplet;
-
 import java.io.*;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 class GameMap {
 
-    private final Core core;
-    private final Tile[][] tiles;
+    private static final String RESOURCES = "src/de/tfour/main/resources/";
+
+    private final Game game;
     private String name = "devmap";
-    //how many tiles have been seen on the map
-    private int seenTilesPercentage;
+    //the folder map files are read from and written to
+    private String directory = RESOURCES;
+    //how many tiles have been seen on the map. kept up to date in setSeen, per chunk in Chunk.seenTileCount.
+    private int seenTileCount;
+
+    //size of the map in tiles and in chunks
+    private int width;
+    private int height;
+    private int chunksX;
+    private int chunksY;
+    //chunks by chunk index (chunkX + chunkY * chunksX), created lazily when first accessed
+    private Chunk[] chunks;
+    //binary map file the chunks of the current map are decoded from, null if the map was imported from text
+    private MapFile chunkSource;
+
+    //stored chunks this many chunks around the player are decoded in the background before anyone needs them
+    static final int PREFETCH_DISTANCE = 3;
+    //decodes prefetched chunks one after the other, closest to the player first
+    private static final ExecutorService prefetcher = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "ChunkPrefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+    //chunks decoded by the prefetcher that wait to be put into the map on the game's thread
+    private final ConcurrentLinkedQueue<PrefetchedChunk> prefetched = new ConcurrentLinkedQueue<>();
+
+    //neighbour offsets in the order right, down, left, up
+    static final int[] DIR_X = {1, 0, -1, 0};
+    static final int[] DIR_Y = {0, 1, 0, -1};
+
+    //astar scratch buffers, indexed by tile index (see index()). reused between searches to avoid allocating per call.
+    //they are paged by chunk, so only the chunks a search actually touches cost memory.
+    private static final int NOT_QUEUED = -1;
+    private static final int CLOSED = -2;
+    private final ChunkedIntArray stamp = new ChunkedIntArray();
+    private final ChunkedIntArray gScore = new ChunkedIntArray();
+    private final ChunkedIntArray fScore = new ChunkedIntArray();
+    private final ChunkedIntArray parent = new ChunkedIntArray();
+    private final ChunkedIntArray heapPos = new ChunkedIntArray();
+    private int[] heap = new int[64];
+    private int heapSize;
+    private int generation;
 
-    public GameMap(Core core) {
-        this.core = core;
-        tiles = new Tile[Core.widthInTiles][Core.heightInTiles];
+    //distance field towards a target tile (usually the player), shared by all ai creatures.
+    //it is rebuilt once per round, or lazily after the map changed, instead of once per creature.
+    static final int FLOW_FIELD_RADIUS = 16;
+    private final ChunkedIntArray flowDistance = new ChunkedIntArray();
+    private final ChunkedIntArray flowStamp = new ChunkedIntArray();
+    private int[] flowQueue = new int[64];
+    private int flowGeneration;
+    private int flowTargetX = -1;
+    private int flowTargetY = -1;
+    private boolean flowFieldDirty;
+
+    //the tiles the player currently sees
+    static final int SIGHT_RADIUS = 4;
+    private final FieldOfView fieldOfView = new FieldOfView(this, SIGHT_RADIUS);
+
+    //goals at least this many steps away (ignoring walls) are searched hierarchically instead of with astar
+    static final int HIERARCHICAL_PATH_DISTANCE = 2 * Chunk.SIZE;
+    private final HierarchicalPathfinder pathfinder = new HierarchicalPathfinder(this);
+
+    //incremented whenever a tile, its occupant or its items change, so cached results (e.g. movepools) know when to
+    //recompute. the journal tells what exactly changed.
+    private int version;
+    private final MapJournal journal = new MapJournal();
+    //the version at which the map was last replaced as a whole (loaded, reset). changes before it do not apply anymore.
+    private int resizeVersion;
+
+    //an empty map of a single chunk until one is loaded
+    public GameMap(Game game) {
+        this(game, Chunk.SIZE, Chunk.SIZE);
     }
 
-    public void drawTiles() {
-        core.noStroke();
-        //draw tiles themselves first
-        for (Tile[] tt : tiles) {
-            for (Tile t : tt) {
-                t.draw();
-                t.setVisible(false);
-            }
+    public GameMap(Game game, int width, int height) {
+        this.game = game;
+        resize(width, height);
+    }
+
+    //drops all chunks and sets up an empty map of the given size
+    private void resize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.chunksX = (width + Chunk.MASK) >> Chunk.BITS;
+        this.chunksY = (height + Chunk.MASK) >> Chunk.BITS;
+        this.chunks = new Chunk[chunksX * chunksY];
+        seenTileCount = 0;
+        fieldOfView.reset();
+        pathfinder.reset(chunks.length);
+        game.getCreatureIndex().resize(width, height);
+        for (ChunkedIntArray a : new ChunkedIntArray[]{stamp, gScore, fScore, parent, heapPos, flowDistance, flowStamp}) {
+            a.resize(chunks.length);
+        }
+        flowFieldDirty = true;
+        version++;
+        resizeVersion = version;
+        journal.clear(version);
+    }
+
+    //every change to a tile goes through here, see MapJournal
+    private void changed(Chunk chunk, int index, MapJournal.Change change) {
+        version++;
+        chunk.version = version;
+        journal.record(version, index, change);
+    }
+
+    //returns the chunk, creating (and if possible loading) it first if it does not exist yet
+    Chunk getChunk(int chunkX, int chunkY) {
+        int c = chunkY * chunksX + chunkX;
+        Chunk chunk = chunks[c];
+        if (chunk == null) {
+            chunk = createChunk(chunkX, chunkY);
+            chunks[c] = chunk;
         }
+        return chunk;
     }
 
-    public void drawItemsAndCreatures() {
-        for (Tile[] tt : tiles) {
-            for (Tile t : tt) {
-                if (t.getCreature() != null) {
-                    Creature c = t.getCreature();
-                    if (c.getNextMoves() != null && !c.getNextMoves().isEmpty() && !c.isMoving()) {
-                        c.move(c.getNextMoves().remove(0));
-                    }
+    //decodes the stored chunks around the given chunk that were not created yet on a background thread, in rings
+    //around it so the closest ones are ready first. installPrefetchedChunks() puts them into the map.
+    void prefetchChunks(int centerX, int centerY) {
+        MapFile source = chunkSource;
+        if (source == null) return;
+        ArrayList<Integer> missing = new ArrayList<>();
+        for (int ring = 0; ring <= PREFETCH_DISTANCE; ring++) {
+            for (int cy = centerY - ring; cy <= centerY + ring; cy++) {
+                //inner rows only have a chunk on each side of the ring
+                int step = (cy == centerY - ring || cy == centerY + ring) ? 1 : Math.max(1, 2 * ring);
+                for (int cx = centerX - ring; cx <= centerX + ring; cx += step) {
+                    if (cx < 0 || cy < 0 || cx >= chunksX || cy >= chunksY) continue;
+                    int c = cy * chunksX + cx;
+                    if (chunks[c] == null && source.hasChunk(c)) missing.add(c);
                 }
-                t.drawItems();
-                t.drawCreature();
             }
         }
+        if (missing.isEmpty()) return;
+        int width = this.width;
+        int height = this.height;
+        int chunksX = this.chunksX;
+        prefetcher.execute(() -> {
+            for (int c : missing) {
+                prefetched.add(new PrefetchedChunk(source, createChunk(c % chunksX, c / chunksX, width, height, chunksX, source)));
+            }
+        });
+    }
+
+    //puts the chunks the prefetcher decoded so far into the map. chunks that were created in the meantime anyway,
+    //or belong to a map that was replaced since, are dropped. returns the number of chunks put in.
+    int installPrefetchedChunks() {
+        int installed = 0;
+        for (PrefetchedChunk p = prefetched.poll(); p != null; p = prefetched.poll()) {
+            if (p.source != chunkSource) continue;
+            int c = p.chunk.chunkY * chunksX + p.chunk.chunkX;
+            if (chunks[c] != null) continue;
+            chunks[c] = p.chunk;
+            installed++;
+        }
+        return installed;
+    }
+
+    //creates all chunks that overlap the given tile rectangle, so reading from it later does not modify the map
+    void createChunks(int x0, int y0, int x1, int y1) {
+        int firstChunkX = Math.max(0, x0) >> Chunk.BITS;
+        int firstChunkY = Math.max(0, y0) >> Chunk.BITS;
+        int lastChunkX = Math.min(width - 1, x1) >> Chunk.BITS;
+        int lastChunkY = Math.min(height - 1, y1) >> Chunk.BITS;
+        for (int cy = firstChunkY; cy <= lastChunkY; cy++) {
+            for (int cx = firstChunkX; cx <= lastChunkX; cx++) {
+                getChunk(cx, cy);
+            }
+        }
+    }
+
+    private Chunk createChunk(int chunkX, int chunkY) {
+        return createChunk(chunkX, chunkY, width, height, chunksX, chunkSource);
+    }
+
+    //only touches the new chunk and the (read only) map file, so the prefetcher can call it as well
+    private static Chunk createChunk(int chunkX, int chunkY, int width, int height, int chunksX, MapFile chunkSource) {
+        Chunk chunk = new Chunk(chunkX, chunkY);
+        //tiles that are not stored anywhere start out as grass
+        for (int ly = 0; ly < Chunk.SIZE; ly++) {
+            for (int lx = 0; lx < Chunk.SIZE; lx++) {
+                boolean inside = (chunkX << Chunk.BITS) + lx < width && (chunkY << Chunk.BITS) + ly < height;
+                chunk.setType(ly * Chunk.SIZE + lx, inside ? 0 : TileType.VOID);
+            }
+        }
+        if (chunkSource != null) {
+            try {
+                chunkSource.readChunk(chunkY * chunksX + chunkX, chunk);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return chunk;
+    }
+
+    //a path like astar's. far goals are found on HierarchicalPathfinder's graph of the map, which visits a lot fewer
+    //tiles, but the path can be a few steps longer than the shortest one.
+    public ArrayList<Tile> findPath(Tile start, Tile goal) {
+        return findPath(start, goal, Integer.MAX_VALUE);
+    }
+
+    //maxExpanded bounds the search for a goal that is close, see astar
+    ArrayList<Tile> findPath(Tile start, Tile goal, int maxExpanded) {
+        if (start == null || goal == null) return null;
+        //astar never reaches a goal that cannot be stood on, it would expand every tile it can reach before it gives up
+        if (!isViable(goal.getIndex())) return null;
+        if (manhattan(start.getX(), start.getY(), goal.getX(), goal.getY()) < HIERARCHICAL_PATH_DISTANCE) return astar(start, goal, maxExpanded);
+        return pathfinder.findPath(start, goal);
     }
 
     public ArrayList<Tile> astar(Tile start, Tile goal) {
-        int[][] gweight = new int[tiles.length][tiles[0].length];
-        ArrayList<Tile> openList = new ArrayList<>();
-        HashMap<Tile, Tile> predecessors = new HashMap<>();
-        HashSet<Tile> closedList = new HashSet<>();
-        openList.add(start);
-        while (!openList.isEmpty()) {
-            Tile min = openList.get(0);
-            for (Tile t : openList) {
-                if (gweight[t.getX()][t.getY()] < gweight[min.getX()][min.getY()]) {
-                    min = t;
-                }
+        return astar(start, goal, Integer.MAX_VALUE);
+    }
+
+    //gives up (returns null) once maxExpanded tiles have been expanded without reaching the goal
+    ArrayList<Tile> astar(Tile start, Tile goal, int maxExpanded) {
+        if (start == null || goal == null) return null;
+        prepareSearch();
+        int expanded = 0;
+        int startIndex = index(start.getX(), start.getY());
+        int goalIndex = index(goal.getX(), goal.getY());
+        int goalX = goal.getX();
+        int goalY = goal.getY();
+        stamp.set(startIndex, generation);
+        gScore.set(startIndex, 0);
+        parent.set(startIndex, -1);
+        heapPush(startIndex, manhattan(start.getX(), start.getY(), goalX, goalY));
+        while (heapSize > 0) {
+            int current = heapPop();
+            if (current == goalIndex) {
+                return buildPath(startIndex, goalIndex);
             }
-            openList.remove(min);
-            if (min.equals(goal)) {
-                ArrayList<Tile> output = new ArrayList<>();
-                Tile tile = goal;
-                output.add(goal);
-                while (predecessors.get(tile) != null) {
-                    output.add(predecessors.get(tile));
-                    tile = predecessors.get(tile);
+            heapPos.set(current, CLOSED);
+            if (++expanded > maxExpanded) return null;
+            int tentativeG = gScore.get(current) + 1;
+            //expand in the same order as Tile.getNeighbours: right, down, left, up
+            for (int d = 0; d < 4; d++) {
+                int n = getNeighbourIndex(current, d);
+                if (n == -1 || !isViable(n)) continue;
+                if (stamp.get(n) == generation) {
+                    if (heapPos.get(n) == CLOSED || tentativeG >= gScore.get(n)) continue;
+                } else {
+                    stamp.set(n, generation);
+                    heapPos.set(n, NOT_QUEUED);
                 }
-                output.remove(start);
-                Collections.reverse(output);
-                return output;
-            }
-            closedList.add(min);
-            //expand
-            for (Tile successor : min.getViableNeighbours()) {
-                if (closedList.contains(successor))
-                    continue;
-                int tentative_g = gweight[min.getX()][min.getY()] + 1;
-                if (openList.contains(successor) && tentative_g >= gweight[successor.getX()][successor.getY()])
-                    continue;
-                predecessors.put(successor, min);
-                gweight[successor.getX()][successor.getY()] = tentative_g;
-                if (!openList.contains(successor)) {
-                    openList.add(successor);
+                gScore.set(n, tentativeG);
+                parent.set(n, current);
+                int f = tentativeG + manhattan(getX(n), getY(n), goalX, goalY);
+                if (heapPos.get(n) == NOT_QUEUED) {
+                    heapPush(n, f);
+                } else {
+                    fScore.set(n, f);
+                    siftUp(heapPos.get(n));
                 }
             }
         }
         return null;
     }
 
+    //walks the predecessor chain back from the goal. the start tile is not part of the path.
+    private ArrayList<Tile> buildPath(int startIndex, int goalIndex) {
+        ArrayList<Tile> output = new ArrayList<>(gScore.get(goalIndex));
+        for (int i = goalIndex; i != startIndex && i != -1; i = parent.get(i)) {
+            output.add(getTile(i));
+        }
+        Collections.reverse(output);
+        return output;
+    }
+
+    private static int manhattan(int x0, int y0, int x1, int y1) {
+        return Math.abs(x0 - x1) + Math.abs(y0 - y1);
+    }
+
+    //starts a new search generation. bumping the generation invalidates every entry of the previous search without clearing the arrays.
+    private void prepareSearch() {
+        generation++;
+        if (generation <= 0) {
+            //the counter wrapped around, old stamps could collide with new generations
+            stamp.clear();
+            generation = 1;
+        }
+        heapSize = 0;
+    }
+
+    //binary min-heap over tile indices, ordered by fScore. ties prefer the entry with the higher gScore, i.e. closer to the goal.
+    private boolean heapLess(int a, int b) {
+        int fa = fScore.get(a);
+        int fb = fScore.get(b);
+        if (fa != fb) return fa < fb;
+        return gScore.get(a) > gScore.get(b);
+    }
+
+    private void heapPush(int index, int f) {
+        fScore.set(index, f);
+        if (heapSize == heap.length) heap = Arrays.copyOf(heap, heapSize * 2);
+        heap[heapSize] = index;
+        heapPos.set(index, heapSize);
+        heapSize++;
+        siftUp(heapSize - 1);
+    }
+
+    private int heapPop() {
+        int top = heap[0];
+        heapSize--;
+        if (heapSize > 0) {
+            heap[0] = heap[heapSize];
+            heapPos.set(heap[0], 0);
+            siftDown(0);
+        }
+        return top;
+    }
+
+    private void siftUp(int pos) {
+        int index = heap[pos];
+        while (pos > 0) {
+            int parentPos = (pos - 1) >> 1;
+            int parentIndex = heap[parentPos];
+            if (!heapLess(index, parentIndex)) break;
+            heap[pos] = parentIndex;
+            heapPos.set(parentIndex, pos);
+            pos = parentPos;
+        }
+        heap[pos] = index;
+        heapPos.set(index, pos);
+    }
+
+    private void siftDown(int pos) {
+        int index = heap[pos];
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && heapLess(heap[child + 1], heap[child])) child++;
+            if (!heapLess(heap[child], index)) break;
+            heap[pos] = heap[child];
+            heapPos.set(heap[pos], pos);
+            pos = child;
+        }
+        heap[pos] = index;
+        heapPos.set(index, pos);
+    }
+
+    //sets the target of the shared flow field. the field itself is computed the next time it is queried.
+    public void updateFlowField(Tile target) {
+        if (target == null) return;
+        flowTargetX = target.getX();
+        flowTargetY = target.getY();
+        flowFieldDirty = true;
+    }
+
+    //breadth first search from the target over all non-solid tiles, bounded by FLOW_FIELD_RADIUS.
+    //creatures are ignored here, they are only checked when a creature asks for its next step.
+    void ensureFlowField() {
+        if (!flowFieldDirty || flowTargetX < 0) return;
+        flowFieldDirty = false;
+        flowGeneration++;
+        if (flowGeneration <= 0) {
+            flowStamp.clear();
+            flowGeneration = 1;
+        }
+        int head = 0;
+        int tail = 0;
+        int targetIndex = index(flowTargetX, flowTargetY);
+        flowStamp.set(targetIndex, flowGeneration);
+        flowDistance.set(targetIndex, 0);
+        flowQueue[tail++] = targetIndex;
+        while (head < tail) {
+            int current = flowQueue[head++];
+            int distance = flowDistance.get(current) + 1;
+            if (distance > FLOW_FIELD_RADIUS) continue;
+            for (int d = 0; d < 4; d++) {
+                int n = getNeighbourIndex(current, d);
+                if (n == -1 || flowStamp.get(n) == flowGeneration) continue;
+                if (isSolid(n)) continue;
+                flowStamp.set(n, flowGeneration);
+                flowDistance.set(n, distance);
+                if (tail == flowQueue.length) flowQueue = Arrays.copyOf(flowQueue, tail * 2);
+                flowQueue[tail++] = n;
+            }
+        }
+    }
+
+    //steps needed from the given tile to the flow field target, ignoring creatures. -1 if out of range or unreachable.
+    public int getFlowDistance(Tile t) {
+        if (t == null || flowTargetX < 0) return -1;
+        ensureFlowField();
+        int i = index(t.getX(), t.getY());
+        return flowStamp.get(i) == flowGeneration ? flowDistance.get(i) : -1;
+    }
+
+    //the free neighbour of the given tile that is closest to the flow field target, or null if no step gets closer.
+    public Tile getFlowStep(Tile fromTile) {
+        int distance = getFlowDistance(fromTile);
+        if (distance <= 0) return null;
+        int from = index(fromTile.getX(), fromTile.getY());
+        int best = -1;
+        int bestDistance = distance;
+        for (int d = 0; d < 4; d++) {
+            int n = getNeighbourIndex(from, d);
+            if (n == -1 || !isViable(n)) continue;
+            if (flowStamp.get(n) == flowGeneration && flowDistance.get(n) < bestDistance) {
+                best = n;
+                bestDistance = flowDistance.get(n);
+            }
+        }
+        return best == -1 ? null : getTile(best);
+    }
+
+    //index of the neighbour in the given direction (see DIR_X/DIR_Y), -1 if it is outside the map.
+    //uses the neighbour table shared by all chunks, so this does not allocate.
+    public int getNeighbourIndex(int index, int direction) {
+        int slot = (index & (Chunk.AREA - 1)) * 4 + direction;
+        int chunkIndex = index >> Chunk.INDEX_BITS;
+        if (Chunk.CROSSES_BORDER[slot]) {
+            int chunkX = chunkIndex % chunksX + DIR_X[direction];
+            int chunkY = chunkIndex / chunksX + DIR_Y[direction];
+            if (chunkX < 0 || chunkY < 0 || chunkX >= chunksX || chunkY >= chunksY) return -1;
+            chunkIndex = chunkY * chunksX + chunkX;
+        }
+        int local = Chunk.NEIGHBOUR_LOCAL[slot];
+        if (!getChunk(chunkIndex).isInside(local)) return -1;
+        return (chunkIndex << Chunk.INDEX_BITS) | local;
+    }
+
+    //a tile can be walked onto if it is not solid and nobody stands on it
+    public boolean isViable(int index) {
+        Chunk chunk = getChunk(index >> Chunk.INDEX_BITS);
+        int local = index & (Chunk.AREA - 1);
+        if (Chunk.getBit(chunk.solid, local)) return false;
+        TileContents c = chunk.getContents(local);
+        return c == null || c.creature == null;
+    }
+
+    //writes the indices of all walkable neighbours into out (which needs room for 4) and returns how many there are.
+    public int getViableNeighbours(int index, int[] out) {
+        int count = 0;
+        for (int d = 0; d < 4; d++) {
+            int n = getNeighbourIndex(index, d);
+            if (n != -1 && isViable(n)) out[count++] = n;
+        }
+        return count;
+    }
+
+    //writes the indices of all neighbours that hold a creature into out (which needs room for 4) and returns how many there are.
+    public int getOccupiedNeighbours(int index, int[] out) {
+        int count = 0;
+        for (int d = 0; d < 4; d++) {
+            int n = getNeighbourIndex(index, d);
+            if (n != -1 && getCreature(n) != null) out[count++] = n;
+        }
+        return count;
+    }
+
+    //saves the map in the binary format, to a new file (see MapFile). from then on chunks are read from the new file.
     public void saveMap() {
+        File file = MapFile.next(directory, name);
         try {
-            FileWriter writer = new FileWriter("src/de/tfour/main/resources/" + name + ".txt");
-            PrintWriter print_line = new PrintWriter(writer);
-            StringBuilder toWrite = new StringBuilder();
-            for (int y = 0; y < tiles[0].length; y++) {
-                for (Tile[] tile : tiles) {
-                    toWrite.append(tile[y].getId()).append(" ");
+            MapFile.write(file, width, height, chunks, chunkSource);
+            chunkSource = MapFile.open(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        MapFile.deleteOthers(directory, name, file);
+    }
+
+    //writes the map in the old plain text format, one line of space separated tile ids per row
+    public void exportText() {
+        try (Writer out = new BufferedWriter(new FileWriter(directory + name + ".txt"))) {
+            for (int y = 0; y < height; y++) {
+                if (y > 0) out.write('\n');
+                for (int x = 0; x < width; x++) {
+                    if (x > 0) out.write(' ');
+                    out.write(Integer.toString(getType(index(x, y)).getId()));
                 }
-                toWrite = new StringBuilder(toWrite.substring(0, toWrite.length() - 1));
-                toWrite.append("\n");
             }
-            toWrite = new StringBuilder(toWrite.substring(0, toWrite.length() - 1));
-            print_line.print(toWrite);
-            print_line.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    //replaces the map with an empty one (all grass) of the given size, e.g. to generate a map into it
+    public void reset(String mapName, int width, int height) {
+        this.name = mapName;
+        chunkSource = null;
+        resize(width, height);
+    }
+
+    //loads a binary map if there is one, otherwise imports the plain text format.
+    //chunks of a binary map are only decoded once something accesses them.
     public void loadMap(String mapName) {
         this.name = mapName;
-        File file = new File("src/de/tfour/main/resources/" + mapName + ".txt");
+        File file = MapFile.newest(directory, mapName);
+        if (file != null) {
+            try {
+                MapFile source = MapFile.open(file);
+                chunkSource = null;
+                resize(source.getWidth(), source.getHeight());
+                chunkSource = source;
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        importText(new File(directory + mapName + ".txt"));
+    }
+
+    //parses the plain text format straight from the file's bytes, without splitting lines into strings
+    private void importText(File file) {
+        byte[] data;
         try {
-            BufferedReader br = new BufferedReader(new FileReader(file));
-            String st;
-            int y = 0;
-            while ((st = br.readLine()) != null) {
-                String[] chars = st.split(" ");
-                int x = 0;
-                for (String c : chars) {
-                    tiles[x][y] = new Tile(core, x, y, Integer.parseInt(c));
-                    x++;
+            data = Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        //first pass: the number of ids in the first line and the number of lines give the map size
+        int columns = 0;
+        int rows = 0;
+        boolean inNumber = false;
+        boolean lineHasIds = false;
+        for (byte b : data) {
+            if (b >= '0' && b <= '9') {
+                if (!inNumber && rows == 0) columns++;
+                inNumber = true;
+                lineHasIds = true;
+            } else {
+                inNumber = false;
+                if (b == '\n') {
+                    if (lineHasIds) rows++;
+                    lineHasIds = false;
                 }
-                y++;
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+        }
+        if (lineHasIds) rows++;
+        chunkSource = null;
+        resize(columns, rows);
+        //second pass: parse the ids
+        int x = 0;
+        int y = 0;
+        int value = -1;
+        for (int i = 0; i <= data.length; i++) {
+            byte b = i < data.length ? data[i] : (byte) '\n';
+            if (b >= '0' && b <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (b - '0');
+                continue;
+            }
+            if (value >= 0) {
+                if (x < width && y < height) {
+                    getChunk(x >> Chunk.BITS, y >> Chunk.BITS).setType(Chunk.local(x, y), TileType.get(value).getId());
+                }
+                x++;
+                value = -1;
+            }
+            if (b == '\n') {
+                if (x > 0) y++;
+                x = 0;
+            }
         }
     }
 
+    //updates what the player can see. only does work if the player moved or the terrain around them changed.
     public void updateTileVisibility() {
-        for (Tile t : core.getGame().getPlayer().getTile().getTilesInRadius(4)) {
-            t.setSeen(true);
-            t.setVisible(true);
-        }
+        Player player = game.getPlayer();
+        fieldOfView.update(player.getX(), player.getY());
     }
 
-    public void updateSeenTilesPercentage() {
-        int numberOfTiles = 0;
-        int numberOfSeenTiles = 0;
-        for (Tile[] tt : tiles) {
-            for (Tile t : tt) {
-                numberOfTiles++;
-                if (t.isSeen()) numberOfSeenTiles++;
-            }
-        }
-        seenTilesPercentage = (int) PApplet.map(numberOfSeenTiles, 0, numberOfTiles, 0, 100);
+    public FieldOfView getFieldOfView() {
+        return fieldOfView;
     }
 
-    public void setTile(int x, int y, Tile t) {
-        tiles[x][y] = t;
+    public void setTile(int x, int y, int id) {
+        if (x < 0 || y < 0 || x >= width || y >= height) return;
+        Chunk chunk = getChunk(x >> Chunk.BITS, y >> Chunk.BITS);
+        chunk.setType(Chunk.local(x, y), TileType.get(id).getId());
+        chunk.markDirty(Chunk.local(x, y));
+        chunk.animatedTilesDirty = true;
+        fieldOfView.onTileChanged(x, y);
+        pathfinder.onTileChanged(x, y);
+        flowFieldDirty = true;
+        changed(chunk, index(x, y), MapJournal.Change.TYPE);
     }
 
     public Tile getTile(int x, int y) {
-        if (x < 0 || y < 0 || x >= Core.widthInTiles || y >= Core.heightInTiles) return null;
-        return tiles[x][y];
+        if (x < 0 || y < 0 || x >= width || y >= height) return null;
+        return new Tile(this, x, y);
+    }
+
+    public Tile getTile(int index) {
+        if (!getChunk(index >> Chunk.INDEX_BITS).isInside(index & (Chunk.AREA - 1))) return null;
+        return new Tile(this, getX(index), getY(index));
+    }
+
+    //per tile state, stored in the chunks and accessed by tile index
+
+    TileType getType(int index) {
+        return TileType.get(getChunk(index >> Chunk.INDEX_BITS).types[index & (Chunk.AREA - 1)]);
+    }
+
+    boolean isSolid(int index) {
+        return Chunk.getBit(getChunk(index >> Chunk.INDEX_BITS).solid, index & (Chunk.AREA - 1));
+    }
+
+    boolean isSeen(int index) {
+        return Chunk.getBit(getChunk(index >> Chunk.INDEX_BITS).seen, index & (Chunk.AREA - 1));
+    }
+
+    void setSeen(int index, boolean seen) {
+        Chunk chunk = getChunk(index >> Chunk.INDEX_BITS);
+        int local = index & (Chunk.AREA - 1);
+        if (Chunk.getBit(chunk.seen, local) == seen) return;
+        Chunk.setBit(chunk.seen, local, seen);
+        int change = seen ? 1 : -1;
+        chunk.seenTileCount += change;
+        seenTileCount += change;
+        chunk.markDirty(local);
+    }
+
+    boolean isVisible(int index) {
+        return Chunk.getBit(getChunk(index >> Chunk.INDEX_BITS).visible, index & (Chunk.AREA - 1));
+    }
+
+    void setVisible(int index, boolean visible) {
+        Chunk chunk = getChunk(index >> Chunk.INDEX_BITS);
+        int local = index & (Chunk.AREA - 1);
+        if (Chunk.getBit(chunk.visible, local) == visible) return;
+        Chunk.setBit(chunk.visible, local, visible);
+        chunk.markFogDirty(local);
+    }
+
+    Creature getCreature(int index) {
+        TileContents c = getChunk(index >> Chunk.INDEX_BITS).getContents(index & (Chunk.AREA - 1));
+        return c == null ? null : c.creature;
+    }
+
+    void setCreature(int index, Creature creature) {
+        Chunk chunk = getChunk(index >> Chunk.INDEX_BITS);
+        int local = index & (Chunk.AREA - 1);
+        if (creature != null) {
+            chunk.getOrCreateContents(local).creature = creature;
+        } else if (chunk.getContents(local) != null) {
+            chunk.getContents(local).creature = null;
+            chunk.releaseContents(local);
+        }
+        changed(chunk, index, MapJournal.Change.OCCUPANCY);
+    }
+
+    List<Item> getItems(int index) {
+        TileContents c = getChunk(index >> Chunk.INDEX_BITS).getContents(index & (Chunk.AREA - 1));
+        return c == null || c.items == null ? Collections.<Item>emptyList() : c.items;
     }
 
-    public Tile[][] getTiles() {
-        return tiles;
+    boolean addItem(int index, Item item) {
+        if (getItems(index).size() >= Inventory.ITEMSTACK_MAX) return false;
+        Chunk chunk = getChunk(index >> Chunk.INDEX_BITS);
+        TileContents c = chunk.getOrCreateContents(index & (Chunk.AREA - 1));
+        if (c.items == null) c.items = new ArrayList<>(Inventory.ITEMSTACK_MAX);
+        c.items.add(item);
+        changed(chunk, index, MapJournal.Change.ITEMS);
+        return true;
+    }
+
+    void clearItems(int index) {
+        Chunk chunk = getChunk(index >> Chunk.INDEX_BITS);
+        int local = index & (Chunk.AREA - 1);
+        TileContents c = chunk.getContents(local);
+        if (c == null || c.items == null) return;
+        c.items = null;
+        chunk.releaseContents(local);
+        changed(chunk, index, MapJournal.Change.ITEMS);
+    }
+
+    Chunk getChunk(int chunkIndex) {
+        Chunk chunk = chunks[chunkIndex];
+        return chunk != null ? chunk : getChunk(chunkIndex % chunksX, chunkIndex / chunksX);
+    }
+
+    //the chunk if it was created already, null otherwise. does not create or load anything.
+    Chunk peekChunk(int chunkX, int chunkY) {
+        return chunks[chunkY * chunksX + chunkX];
+    }
+
+    //packs a tile position into a single int. indices are chunk major, see Chunk.INDEX_BITS.
+    public int index(int x, int y) {
+        return (((y >> Chunk.BITS) * chunksX + (x >> Chunk.BITS)) << Chunk.INDEX_BITS) | Chunk.local(x, y);
+    }
+
+    //tile column of a tile index
+    public int getX(int index) {
+        return (((index >> Chunk.INDEX_BITS) % chunksX) << Chunk.BITS) | (index & Chunk.MASK);
+    }
+
+    //tile row of a tile index
+    public int getY(int index) {
+        return (((index >> Chunk.INDEX_BITS) / chunksX) << Chunk.BITS) | ((index >> Chunk.BITS) & Chunk.MASK);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getChunksX() {
+        return chunksX;
+    }
+
+    public int getChunksY() {
+        return chunksY;
+    }
+
+    public Game getGame() {
+        return game;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    int getResizeVersion() {
+        return resizeVersion;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    //e.g. a temporary folder, so the benchmark never touches the game's maps. ends with a separator.
+    void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    //the file unloaded chunks are read from, if any
+    MapFile getChunkSource() {
+        return chunkSource;
+    }
+
+    MapJournal getJournal() {
+        return journal;
+    }
+
+    //map version of the last change within the chunk, 0 if the chunk was never changed (or does not exist yet)
+    int getChunkVersion(int chunkX, int chunkY) {
+        Chunk chunk = peekChunk(chunkX, chunkY);
+        return chunk == null ? 0 : chunk.version;
     }
 
     public int getSeenTilesPercentage() {
-        return seenTilesPercentage;
+        return (int) (seenTileCount * 100L / ((long) width * height));
+    }
+
+    public int getSeenTileCount() {
+        return seenTileCount;
+    }
+
+    //explored part of a single chunk in percent, e.g. for region stats. chunks that were never created are unexplored.
+    public int getSeenTilesPercentage(int chunkX, int chunkY) {
+        Chunk chunk = chunks[chunkY * chunksX + chunkX];
+        if (chunk == null) return 0;
+        int inside = Math.min(Chunk.SIZE, width - (chunkX << Chunk.BITS)) * Math.min(Chunk.SIZE, height - (chunkY << Chunk.BITS));
+        return chunk.seenTileCount * 100 / inside;
+    }
+
+    private static final class PrefetchedChunk {
+        final MapFile source;
+        final Chunk chunk;
+
+        PrefetchedChunk(MapFile source, Chunk chunk) {
+            this.source = source;
+            this.chunk = chunk;
+        }
     }
 }
@@ -0,0 +1,62 @@
+package de.tfour.main.java;
+
+//a small, fast random generator (splitmix64) whose whole state is one long, so it can be saved and put back exactly.
+//split() derives an independent generator, which lets every subsystem draw from its own stream: how many numbers one
+//of them uses never changes what the others get.
+//not thread safe, every thread has to use its own generator.
+public final class GameRandom {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private long state;
+
+    public GameRandom(long seed) {
+        this.state = seed;
+    }
+
+    public long nextLong() {
+        state += GOLDEN_GAMMA;
+        return mix(state);
+    }
+
+    public int nextInt() {
+        return (int) (nextLong() >>> 32);
+    }
+
+    //a number from 0 (inclusive) to bound (exclusive)
+    public int nextInt(int bound) {
+        if (bound <= 0) throw new IllegalArgumentException("bound must be positive: " + bound);
+        //the high bits times bound, which is unbiased enough for a game and needs no division
+        return (int) (((nextLong() >>> 33) * bound) >>> 31);
+    }
+
+    //a number from 0 (inclusive) to 1 (exclusive)
+    public float nextFloat() {
+        return (nextLong() >>> 40) * 0x1.0p-24f;
+    }
+
+    //a new generator that is independent of this one. this one moves on by one number.
+    public GameRandom split() {
+        return new GameRandom(mix(nextLong()));
+    }
+
+    //the n-th of many independent generators that all come from the same seed, e.g. one per creature of a round.
+    //unlike split() this can be called in any order and on any thread.
+    public static GameRandom stream(long seed, long n) {
+        return new GameRandom(mix(seed + (n + 1) * GOLDEN_GAMMA));
+    }
+
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,684 @@
+package de.tfour.main.java;
+
+import processing.core.PApplet;
+import processing.core.PConstants;
+import processing.core.PGraphics;
+import processing.core.PImage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+//draws a Game with processing and turns mouse and keyboard input into InputEvents.
+//it only reads the game state, everything that changes it goes through the GameLoop, which updates the game and
+//hands it the input.
+public class GameRenderer {
+
+    private final Core core;
+    private final Game game;
+    private final GameLoop loop;
+    //how far the current frame is between the last two updates, see GameLoop.getAlpha()
+    private float alpha;
+    private final GameMap map;
+    private final Camera camera;
+
+    private final int backgroundColor;
+    private float theta = 0.0f;
+    public static boolean ignoreFog = true;
+    public static boolean ignoreVisibility = true;
+
+    //speech info
+    private final ArrayList<String> bubbleText = new ArrayList<>();
+    private final int bubbleDelay = 3;
+    private int speechSecondsRemaining = 0;
+    private int lastSecond = -1;
+
+    //the info bar and the speech bubbles are drawn into this layer, which is only redrawn when something on it changes
+    private PGraphics hud;
+    private boolean hudInvalid = true;
+    //what the hud currently shows
+    private int hudAp = -1;
+    private int hudHp = -1;
+    private int hudSeenPercentage = -1;
+    private boolean hudPlayerTurn;
+    private boolean hudTurnButtonHovered;
+    //the window title shows the frame rate, it is updated every TITLE_INTERVAL milliseconds
+    private static final int TITLE_INTERVAL = 500;
+    private int lastTitleUpdate = -TITLE_INTERVAL;
+
+    private String consoleText = "";
+    private boolean consoleOn;
+    private boolean inventoryOpen;
+
+    //cached render layer of the static tiles of every chunk close to the camera
+    private final HashMap<Chunk, PGraphics> layers = new HashMap<>();
+    //fog of the same chunks, one pixel per tile that is drawn scaled up to the chunk's size
+    private final HashMap<Chunk, PImage> fogMasks = new HashMap<>();
+    private static final int FOG_COLOR = 100 << 24;
+    private final SpriteCache sprites;
+    //only the creature whose turn it is is animated, so there is a single animation state
+    private Creature animatedCreature;
+    //determines which sprite of the spritesheet should currently be drawn
+    private int animationOffset = 1;
+    //whether the animation of the sprites is running forwards or backwards
+    private boolean animationForwards = true;
+
+    //scratch buffer for neighbour queries on the map
+    private final int[] neighbourBuffer = new int[4];
+    //scratch list for the creatures in view
+    private final ArrayList<Creature> visibleCreatures = new ArrayList<>();
+
+    //the sprites are usually preloaded while the game starts up (see Core), anything missing is loaded on first use
+    public GameRenderer(Core core, Game game, GameLoop loop, SpriteCache sprites) {
+        this.core = core;
+        this.game = game;
+        this.loop = loop;
+        this.map = game.getMap();
+        this.camera = new Camera(Core.widthInTiles, Core.heightInTiles);
+        backgroundColor = core.color(0);
+        this.sprites = sprites;
+    }
+
+    public void draw() {
+        FrameProfiler profiler = game.getProfiler();
+        profiler.beginFrame();
+        //update, unless the loop runs on its own
+        if (!loop.isThreaded()) loop.advance();
+        //the game must not change while a frame is drawn
+        synchronized (loop.getLock()) {
+            alpha = loop.getAlpha();
+            drawFrame(profiler);
+        }
+    }
+
+    private void drawFrame(FrameProfiler profiler) {
+        theta += 0.1f;
+        core.translate(0, 1.5f * Tile.WIDTH);
+        if (core.millis() - lastTitleUpdate >= TITLE_INTERVAL) {
+            core.getSurface().setTitle("TestGame, FPS: " + Math.round(core.frameRate));
+            lastTitleUpdate = core.millis();
+        }
+        for (String text = game.pollMessage(); text != null; text = game.pollMessage()) {
+            bubbleText.add(text);
+            speechSecondsRemaining = bubbleDelay;
+            hudInvalid = true;
+        }
+        if (game.getMode() == Game.GameModes.BUILD) {
+            drawBuildMode();
+            profiler.endFrame();
+            return;
+        }
+        //draw
+        drawBackground();
+        if (inventoryOpen) {
+            drawInventory();
+        } else {
+            Player player = game.getPlayer();
+            camera.follow(player, map, alpha);
+            core.pushMatrix();
+            core.translate(-camera.getPixelX(), -camera.getPixelY());
+            profiler.begin(FrameProfiler.Phase.DRAW_TILES);
+            drawTiles();
+            profiler.end(FrameProfiler.Phase.DRAW_TILES);
+            profiler.begin(FrameProfiler.Phase.DRAW_ITEMS_AND_CREATURES);
+            drawItemsAndCreatures();
+            profiler.end(FrameProfiler.Phase.DRAW_ITEMS_AND_CREATURES);
+            profiler.begin(FrameProfiler.Phase.DRAW_WORLD_OVERLAY);
+            drawWorldOverlay();
+            profiler.end(FrameProfiler.Phase.DRAW_WORLD_OVERLAY);
+            core.popMatrix();
+            profiler.begin(FrameProfiler.Phase.DRAW_OVERLAY);
+            drawOverlay();
+            profiler.end(FrameProfiler.Phase.DRAW_OVERLAY);
+        }
+        profiler.begin(FrameProfiler.Phase.DRAW_INFO);
+        drawInfo();
+        profiler.end(FrameProfiler.Phase.DRAW_INFO);
+        profiler.endFrame();
+        if (game.getMode() == Game.GameModes.DEBUG) drawProfiler(profiler);
+    }
+
+    //percentiles of the recent frames per phase, in microseconds
+    private void drawProfiler(FrameProfiler profiler) {
+        float lineHeight = Tile.WIDTH * 0.5f;
+        float x = core.width - Tile.WIDTH * 10;
+        float y = Tile.WIDTH * 0.5f;
+        core.noStroke();
+        core.fill(0, 180);
+        core.rect(x - Tile.WIDTH * 0.25f, y - lineHeight, Tile.WIDTH * 10, lineHeight * (FrameProfiler.Phase.values().length + 4));
+        core.textSize(lineHeight * 0.8f);
+        core.textAlign(PConstants.LEFT, PConstants.CENTER);
+        core.fill(255);
+        core.text(String.format("%-24s %6s %6s %6s", "us", "p50", "p95", "p99"), x, y);
+        for (FrameProfiler.Phase phase : FrameProfiler.Phase.values()) {
+            y += lineHeight;
+            drawProfilerLine(profiler, phase, phase.name().toLowerCase(), x, y);
+        }
+        drawProfilerLine(profiler, null, "frame", x, y + lineHeight);
+        if (profiler.isTracing()) core.text("tracing...", x, y + 2 * lineHeight);
+    }
+
+    private void drawProfilerLine(FrameProfiler profiler, FrameProfiler.Phase phase, String name, float x, float y) {
+        core.text(String.format("%-24s %6d %6d %6d", name, profiler.getPercentile(phase, 0.5) / 1000,
+                profiler.getPercentile(phase, 0.95) / 1000, profiler.getPercentile(phase, 0.99) / 1000), x, y);
+    }
+
+    private void drawInventory() {
+        for (Item i : game.getPlayer().getInventory().getItems()) {
+
+        }
+    }
+
+    private void drawBuildMode() {
+        drawBackground();
+        camera.follow(game.getPlayer(), map, alpha);
+        core.pushMatrix();
+        core.translate(-camera.getPixelX(), -camera.getPixelY());
+        drawTiles();
+        core.popMatrix();
+        core.noStroke();
+        TileType buildModeTile = game.getBuildModeTile();
+        drawTileAt(buildModeTile, (int) (Tile.WIDTH / 2), (int) (-1.5f * Tile.WIDTH), 1);
+        core.stroke(1);
+        drawTileAt(buildModeTile, core.mouseX, (int) (core.mouseY - 1.5f * Tile.WIDTH), 0.75f);
+        core.textAlign(PConstants.LEFT, PConstants.CENTER);
+        core.text("Current Tile: " + buildModeTile.getName(), Tile.WIDTH * 2, -1.5f * Tile.WIDTH + Tile.WIDTH / 2);
+    }
+
+    private void drawBackground() {
+        switch (game.getMode()) {
+            case DEBUG:
+                core.background(127);
+                break;
+            case PLACE:
+                core.background(core.color(0, 255, 0));
+                break;
+            case BUILD:
+                core.background(core.color(255));
+                break;
+            case PLAY:
+                core.background(backgroundColor);
+                break;
+        }
+    }
+
+    //TILES
+
+    private void drawTiles() {
+        core.noStroke();
+        releaseDistantLayers();
+        //draw tiles themselves first, one cached layer per visible chunk
+        for (int cy = camera.getTileY() >> Chunk.BITS; cy <= Math.min(map.getChunksY() - 1, camera.getLastTileY() >> Chunk.BITS); cy++) {
+            for (int cx = camera.getTileX() >> Chunk.BITS; cx <= Math.min(map.getChunksX() - 1, camera.getLastTileX() >> Chunk.BITS); cx++) {
+                Chunk chunk = map.getChunk(cx, cy);
+                core.image(updateTileLayer(chunk), (cx << Chunk.BITS) * Tile.WIDTH, (cy << Chunk.BITS) * Tile.WIDTH);
+                chunk.updateAnimatedTiles();
+                for (int i = 0; i < chunk.animatedTileCount; i++) {
+                    int local = chunk.animatedTiles[i];
+                    drawTile(map.getTile((cx << Chunk.BITS) | (local & Chunk.MASK), (cy << Chunk.BITS) | (local >> Chunk.BITS)));
+                }
+            }
+        }
+        if (game.getMode() == Game.GameModes.DEBUG) {
+            for (int y = camera.getTileY(); y <= Math.min(map.getHeight() - 1, camera.getLastTileY()); y++) {
+                for (int x = camera.getTileX(); x <= Math.min(map.getWidth() - 1, camera.getLastTileX()); x++) {
+                    drawDebug(map.getTile(x, y));
+                }
+            }
+        }
+    }
+
+    private static boolean isInTileLayer(Chunk chunk, int local) {
+        return chunk.isInside(local) && !TileType.get(chunk.types[local]).isAnimated()
+                && (Chunk.getBit(chunk.seen, local) || ignoreFog);
+    }
+
+    private static void drawLayerTile(Chunk chunk, PGraphics layer, int local) {
+        if (isInTileLayer(chunk, local)) {
+            layer.fill(TileType.get(chunk.types[local]).getColor());
+        } else {
+            layer.fill(0, 0);
+        }
+        layer.rect((local & Chunk.MASK) * Tile.WIDTH, (local >> Chunk.BITS) * Tile.WIDTH, Tile.WIDTH, Tile.WIDTH);
+    }
+
+    //drops the layers of chunks that are far from the camera, or that belong to a map which was replaced since
+    private void releaseDistantLayers() {
+        Iterator<Map.Entry<Chunk, PGraphics>> it = layers.entrySet().iterator();
+        while (it.hasNext()) {
+            Chunk chunk = it.next().getKey();
+            boolean current = chunk.chunkX < map.getChunksX() && chunk.chunkY < map.getChunksY()
+                    && map.peekChunk(chunk.chunkX, chunk.chunkY) == chunk;
+            if (!current || !camera.isNear(chunk.chunkX, chunk.chunkY, 1)) {
+                chunk.releaseLayer();
+                fogMasks.remove(chunk);
+                it.remove();
+            }
+        }
+    }
+
+    private PGraphics updateTileLayer(Chunk chunk) {
+        PGraphics layer = layers.get(chunk);
+        if (layer == null) {
+            int size = (int) (Chunk.SIZE * Tile.WIDTH);
+            layer = core.createGraphics(size, size);
+            chunk.createLayer();
+            layers.put(chunk, layer);
+        }
+        if (chunk.layerIgnoreFog != ignoreFog) {
+            chunk.layerIgnoreFog = ignoreFog;
+            chunk.layerInvalid = true;
+        }
+        if (chunk.layerInvalid) {
+            layer.beginDraw();
+            layer.clear();
+            layer.noStroke();
+            for (int local = 0; local < Chunk.AREA; local++) {
+                if (isInTileLayer(chunk, local)) drawLayerTile(chunk, layer, local);
+            }
+            layer.endDraw();
+            chunk.layerInvalid = false;
+        } else if (chunk.dirtyTileCount > 0) {
+            layer.beginDraw();
+            layer.noStroke();
+            //replace instead of blending, so a dirty tile can also be cleared back to transparent
+            layer.blendMode(PConstants.REPLACE);
+            for (int i = 0; i < chunk.dirtyTileCount; i++) {
+                drawLayerTile(chunk, layer, chunk.dirtyTiles[i]);
+            }
+            layer.blendMode(PConstants.BLEND);
+            layer.endDraw();
+        }
+        for (int i = 0; i < chunk.dirtyTileCount; i++) {
+            chunk.layerDirty[chunk.dirtyTiles[i]] = false;
+        }
+        chunk.dirtyTileCount = 0;
+        return layer;
+    }
+
+    private void drawTileAt(TileType type, int x0, int y0, float percentage) {
+        core.fill(type.getColor());
+        core.rect(x0, y0, Tile.WIDTH * percentage, Tile.WIDTH * percentage);
+    }
+
+    //draws a single (animated) tile on top of the layers
+    private void drawTile(Tile t) {
+        if (!t.isSeen() && !ignoreFog) return;
+        TileType type = t.getType();
+        int colorBase = type.getColor();
+        if (type.isAnimated()) {
+            float amp = 15;
+            float r = core.red(colorBase);
+            float g = core.green(colorBase);
+            float b = core.blue(colorBase);
+            if (type.getAnimation() == TileType.Animation.SHINY) {
+                float colOffset = Core.sin(theta) * amp;
+                core.fill(core.color(r + colOffset, g + colOffset, b + colOffset));
+            } else {
+                //sparkles change every 30 frames. they are derived from position and time instead of being stored per tile.
+                int seed = (t.getX() * 73856093) ^ (t.getY() * 19349663) ^ ((core.frameCount / 30) * 83492791);
+                core.fill(core.color(r + sparkle(seed, amp), g + sparkle(seed >>> 8, amp), b + sparkle(seed >>> 16, amp)));
+            }
+        } else {
+            core.fill(colorBase);
+        }
+        core.rect(t.getX() * Tile.WIDTH, t.getY() * Tile.WIDTH, Tile.WIDTH, Tile.WIDTH);
+    }
+
+    //maps the lowest 8 bits of the seed to an offset between -amp and amp
+    private static float sparkle(int seed, float amp) {
+        return ((seed & 0xff) / 255f * 2 - 1) * amp;
+    }
+
+    private void drawDebug(Tile t) {
+        core.textSize(Tile.WIDTH * 0.5f);
+        core.fill(255);
+        core.textAlign(PConstants.LEFT, PConstants.TOP);
+        core.text(t.getX(), t.getX() * Tile.WIDTH, t.getY() * Tile.WIDTH);
+        core.text(t.getY(), t.getX() * Tile.WIDTH, t.getY() * Tile.WIDTH + Tile.WIDTH * 0.5f);
+    }
+
+    //draws the fog over every tile in view that is not visible, with one image per chunk
+    private void drawFog() {
+        if (ignoreVisibility) return;
+        float size = Chunk.SIZE * Tile.WIDTH;
+        for (int cy = camera.getTileY() >> Chunk.BITS; cy <= Math.min(map.getChunksY() - 1, camera.getLastTileY() >> Chunk.BITS); cy++) {
+            for (int cx = camera.getTileX() >> Chunk.BITS; cx <= Math.min(map.getChunksX() - 1, camera.getLastTileX() >> Chunk.BITS); cx++) {
+                Chunk chunk = map.getChunk(cx, cy);
+                //only chunks with a tile layer track their fog changes
+                if (!layers.containsKey(chunk)) continue;
+                core.image(updateFogMask(chunk), (cx << Chunk.BITS) * Tile.WIDTH, (cy << Chunk.BITS) * Tile.WIDTH, size, size);
+            }
+        }
+    }
+
+    //brings the chunk's fog mask up to date. only tiles whose visibility changed since the last frame are written.
+    private PImage updateFogMask(Chunk chunk) {
+        PImage mask = fogMasks.get(chunk);
+        if (mask == null) {
+            mask = core.createImage(Chunk.SIZE, Chunk.SIZE, PConstants.ARGB);
+            fogMasks.put(chunk, mask);
+            chunk.fogInvalid = true;
+        }
+        if (chunk.fogInvalid) {
+            mask.loadPixels();
+            for (int local = 0; local < Chunk.AREA; local++) {
+                mask.pixels[local] = getFogColor(chunk, local);
+            }
+            mask.updatePixels();
+            chunk.fogInvalid = false;
+        } else if (chunk.fogDirtyCount > 0) {
+            mask.loadPixels();
+            for (int i = 0; i < chunk.fogDirtyCount; i++) {
+                int local = chunk.fogDirtyTiles[i];
+                mask.pixels[local] = getFogColor(chunk, local);
+                chunk.fogDirty[local] = false;
+            }
+            mask.updatePixels();
+        }
+        chunk.fogDirtyCount = 0;
+        return mask;
+    }
+
+    //tiles outside of the map get no fog
+    private static int getFogColor(Chunk chunk, int local) {
+        return chunk.isInside(local) && !Chunk.getBit(chunk.visible, local) ? FOG_COLOR : 0;
+    }
+
+    //CREATURES AND ITEMS
+
+    //draws the items and creatures of the tiles in view
+    private void drawItemsAndCreatures() {
+        core.textSize(Tile.WIDTH * 0.75f);
+        for (int y = camera.getTileY(); y <= Math.min(map.getHeight() - 1, camera.getLastTileY()); y++) {
+            for (int x = camera.getTileX(); x <= Math.min(map.getWidth() - 1, camera.getLastTileX()); x++) {
+                int i = map.index(x, y);
+                Chunk chunk = map.getChunk(i >> Chunk.INDEX_BITS);
+                int local = i & (Chunk.AREA - 1);
+                //plain tiles without contents or a model have nothing to draw here
+                if (chunk.getContents(local) == null && TileType.get(chunk.types[local]).getModel() == ' ') continue;
+                Tile t = map.getTile(i);
+                drawItems(t);
+                if (t.getCreature() == null) drawModel(t);
+            }
+        }
+        //creatures are looked up in the index instead. one extra tile on every side catches the ones that are still
+        //walking over from a tile in view.
+        visibleCreatures.clear();
+        game.getCreatureIndex().inRect(camera.getTileX() - 1, camera.getTileY() - 1, camera.getLastTileX() + 1, camera.getLastTileY() + 1, visibleCreatures);
+        for (Creature c : visibleCreatures) {
+            drawCreature(c);
+        }
+    }
+
+    private void drawModel(Tile t) {
+        core.fill(0);
+        core.textAlign(PConstants.CENTER, PConstants.CENTER);
+        core.text(t.getType().getModel(), t.getX() * Tile.WIDTH + Tile.WIDTH * 0.5f, t.getY() * Tile.WIDTH + Tile.WIDTH * 0.5f);
+    }
+
+    private void drawCreature(Creature c) {
+        //if the tile the creature is on has not yet been discovered, it's not drawn. as easy as that!
+        if (!c.getTile().isSeen()) return;
+        float pixelX = c.getPixelX(alpha);
+        float pixelY = c.getPixelY(alpha);
+        PImage[] img = sprites.getFrames(c);
+        //draw the creature
+        if (img == null) {
+            //if there's no spritesheet, draw the model char instead
+            core.fill(0);
+            core.textAlign(PConstants.CENTER, PConstants.CENTER);
+            core.text(c.getModel(), pixelX + Tile.WIDTH / 2, pixelY + Tile.WIDTH / 2);
+            return;
+        } else {
+            //draw the sprite and calculate the right animationOffset based on the current frame
+            int offset = 1;
+            if (c.isMyTurn()) {
+                if (c != animatedCreature) {
+                    animatedCreature = c;
+                    animationOffset = 1;
+                }
+                offset = animationOffset;
+                if (core.frameCount % 30 == 0) {
+                    if (animationForwards) {
+                        animationOffset++;
+                    } else animationOffset--;
+                    if (animationOffset == 0 || animationOffset == 2) animationForwards = !animationForwards;
+                }
+            }
+            core.image(img[c.getDirection() + offset * 4], pixelX, pixelY, Tile.WIDTH, Tile.WIDTH);
+        }
+
+        //draw the health bar of the creature
+        core.fill(255);
+        core.rect(pixelX, pixelY, Tile.WIDTH, 10);
+        core.fill(0, 255, 0);
+        core.rect(pixelX, pixelY, PApplet.map(c.getHp(), 0, c.getHpMax(), 0, Tile.WIDTH), 10);
+    }
+
+    private void drawItems(Tile t) {
+        List<Item> items = t.getItems();
+        int itempos = 0;
+        for (Item i : items) {
+            drawItem(i, itempos, items.size());
+            itempos++;
+        }
+    }
+
+    private void drawItem(Item item, int pos, int total) {
+        core.fill(item.getColor());
+        float xScale = 0.5f;
+        float yScale = 0.5f;
+        float itemSize = Tile.WIDTH * 0.35f;
+        if (total != 1) {
+            switch (pos) {
+                case 0:
+                    xScale = 0.25f;
+                    if (total != 2) {
+                        yScale = 0.25f;
+                    }
+                    break;
+                case 1:
+                    xScale = 0.75f;
+                    if (total != 2) {
+                        yScale = 0.25f;
+                    }
+                    break;
+                case 2:
+                    yScale = 0.75f;
+                    if (total != 3) {
+                        xScale = 0.25f;
+                    }
+                    break;
+                case 3:
+                    xScale = 0.75f;
+                    yScale = 0.75f;
+                    break;
+                default:
+                    PApplet.println("ERROR, itemSize for Tile is <" + total + "> instead of max 4!");
+                    break;
+            }
+        }
+        core.ellipse(item.getX() * Tile.WIDTH + Tile.WIDTH * xScale, item.getY() * Tile.WIDTH + Tile.WIDTH * yScale, itemSize, itemSize);
+    }
+
+    //OVERLAYS
+
+    //everything that is drawn in map coordinates, on top of the tiles and creatures
+    private void drawWorldOverlay() {
+        Player player = game.getPlayer();
+        drawFog();
+        //draw player movepool
+        if (player.isMyTurn()) {
+            MovePool movepool = player.getMovepool();
+            for (int i = 0; i < movepool.size(); i++) {
+                Tile t = map.getTile(movepool.getX(i), movepool.getY(i));
+                if (t.isVisible()) {
+                    //core.fill(255, 50);
+                    core.noFill();
+                    core.stroke(255, 50);
+                    core.ellipse(t.getX() * Tile.WIDTH + Tile.WIDTH / 2, t.getY() * Tile.WIDTH + Tile.WIDTH / 2, Tile.WIDTH * 0.6f, Tile.WIDTH * 0.6f);
+                    //core.rect(t.getX() * Tile.WIDTH, t.getY() * Tile.WIDTH, Tile.WIDTH, Tile.WIDTH);
+                }
+            }
+        }
+        //draw enemies in reach
+        int enemies = map.getOccupiedNeighbours(map.index(player.getX(), player.getY()), neighbourBuffer);
+        for (int i = 0; i < enemies; i++) {
+            Tile t = map.getTile(neighbourBuffer[i]);
+            core.noFill();
+            core.stroke(255, 0, 0);
+            core.ellipse(t.getX() * Tile.WIDTH + Tile.WIDTH / 2, t.getY() * Tile.WIDTH + Tile.WIDTH / 2, Tile.WIDTH * 0.9f, Tile.WIDTH * 0.9f);
+
+        }
+        //draws player path
+        if (game.getMode() == Game.GameModes.DEBUG && player.getNextMoves() != null) {
+            for (Tile t : player.getNextMoves()) {
+                core.fill(255, 0, 0);
+                core.rect(t.getX() * Tile.WIDTH, t.getY() * Tile.WIDTH, Tile.WIDTH, Tile.WIDTH);
+            }
+        }
+    }
+
+    //everything that is drawn in window coordinates
+    private void drawOverlay() {
+        //handle speechBubble timing, the bubbles themselves are part of the hud
+        if (!bubbleText.isEmpty() && PApplet.second() != lastSecond) {
+            speechSecondsRemaining--;
+            lastSecond = PApplet.second();
+        }
+        if (speechSecondsRemaining <= 0 && !bubbleText.isEmpty()) {
+            bubbleText.remove(0);
+            speechSecondsRemaining = bubbleDelay;
+            hudInvalid = true;
+        }
+
+        //console
+        if (consoleOn) {
+            core.textAlign(PConstants.LEFT, PConstants.CENTER);
+            core.fill(255);
+            core.text(consoleText, 10, core.height / 2);
+        }
+    }
+
+    //draws the hud layer, after redrawing it if anything it shows has changed
+    private void drawInfo() {
+        Player player = game.getPlayer();
+        boolean turnButtonHovered = isOverTurnButton() && game.getToMove() == player;
+        if (hud == null) hud = core.createGraphics(core.width, core.height);
+        if (hudInvalid || player.getAp() != hudAp || player.getHp() != hudHp || map.getSeenTilesPercentage() != hudSeenPercentage
+                || player.isMyTurn() != hudPlayerTurn || turnButtonHovered != hudTurnButtonHovered) {
+            hudAp = player.getAp();
+            hudHp = player.getHp();
+            hudSeenPercentage = map.getSeenTilesPercentage();
+            hudPlayerTurn = player.isMyTurn();
+            hudTurnButtonHovered = turnButtonHovered;
+            hudInvalid = false;
+            hud.beginDraw();
+            hud.clear();
+            hud.noStroke();
+            hud.textFont(core.g.textFont);
+            hud.textSize(Tile.WIDTH);
+            //the hud uses the same coordinates as the rest of the overlay, which start below the info bar
+            hud.translate(0, 1.5f * Tile.WIDTH);
+            drawInfoBar(player);
+            for (int i = 0; i < bubbleText.size(); i++) {
+                drawTextBubble(bubbleText.get(i), i);
+            }
+            hud.endDraw();
+        }
+        core.image(hud, 0, -1.5f * Tile.WIDTH);
+    }
+
+    private void drawInfoBar(Player player) {
+        hud.fill(255);
+        //white hp bar
+        hud.rect(Tile.WIDTH * 8, -Tile.WIDTH, Tile.WIDTH * 4, Tile.WIDTH / 4);
+        hud.textAlign(PConstants.LEFT, PConstants.CENTER);
+        hud.text("AP: " + hudAp, Tile.WIDTH / 2, -1.5f * Tile.WIDTH + Tile.WIDTH / 2);
+        hud.text("Map: " + hudSeenPercentage + "%", Tile.WIDTH * 12.5f, -1.5f * Tile.WIDTH + Tile.WIDTH / 2);
+        hud.textAlign(PConstants.RIGHT, PConstants.CENTER);
+        hud.text("HP: 000/000", Tile.WIDTH * 7.5f, -Tile.WIDTH);
+        String turnbutton = hudPlayerTurn ? "End Turn" : "AI Turn";
+        hud.text(turnbutton, 19 * Tile.WIDTH + Tile.WIDTH / 2, -1.5f * Tile.WIDTH + Tile.WIDTH / 2);
+        if (hudTurnButtonHovered) {
+            hud.fill(255, 255, 120);
+            hud.text(turnbutton, 19 * Tile.WIDTH + Tile.WIDTH / 2 + 1, -1.5f * Tile.WIDTH + Tile.WIDTH / 2 + 1);
+        }
+        //green hp bar
+        hud.fill(0, 255, 0);
+        hud.rect(Tile.WIDTH * 8, -Tile.WIDTH, PApplet.map(hudHp, 0, player.getHpMax(), 0, Tile.WIDTH * 4), Tile.WIDTH / 4);
+    }
+
+    private boolean isOverTurnButton() {
+        return core.mouseX > 16 * Tile.WIDTH && core.mouseY < Tile.WIDTH;
+    }
+
+    private void drawTextBubble(String text, int bubbleNumber) {
+        @SuppressWarnings("SuspiciousNameCombination") float yOffset = Tile.WIDTH;
+        float yOffComputed = yOffset * bubbleNumber;
+        float y = 15.5f;
+        hud.fill(255);
+        hud.triangle(
+                Tile.WIDTH / 3, y * Tile.WIDTH - yOffComputed + Tile.WIDTH / 4,
+                Tile.WIDTH * 2 / 3, y * Tile.WIDTH - yOffComputed + Tile.WIDTH / 4,
+                Tile.WIDTH / 2, y * Tile.WIDTH + Tile.WIDTH / 2 - yOffComputed);
+        hud.rect(0, (y - 0.75f) * Tile.WIDTH - yOffComputed + Tile.WIDTH / 4, hud.textWidth(text), Tile.WIDTH * 3 / 4);
+        hud.fill(0);
+        hud.textAlign(PConstants.LEFT);
+        hud.text(text, 0f, y * Tile.WIDTH - Tile.WIDTH * 1 / 8 - yOffComputed + Tile.WIDTH / 4);
+    }
+
+    //INPUT
+
+    public void keyPressed() {
+        if (core.key == '<') {
+            consoleOn = !consoleOn;
+        }
+        if (consoleOn) {
+            if (core.keyCode == PConstants.BACKSPACE) {
+                consoleText = consoleText.substring(0, consoleText.length() - 1);
+            } else {
+                if (core.key != '<') {
+                    consoleText += core.key;
+                }
+            }
+        }
+        loop.post(InputEvent.key(core.key));
+    }
+
+    public void mousePressed() {
+        synchronized (loop.getLock()) {
+            postClick();
+        }
+    }
+
+    //the mode and the player's turn decide what a click means, so this reads the game state
+    private void postClick() {
+        InputEvent.Button button;
+        switch (core.mouseButton) {
+            case PConstants.LEFT:
+                button = InputEvent.Button.LEFT;
+                break;
+            case PConstants.RIGHT:
+                button = InputEvent.Button.RIGHT;
+                break;
+            case PConstants.CENTER:
+                button = InputEvent.Button.CENTER;
+                break;
+            default:
+                return;
+        }
+        Game.GameModes mode = game.getMode();
+        //the turn button in the info bar ends the player's turn, just like the key does
+        if ((mode == Game.GameModes.PLAY || mode == Game.GameModes.DEBUG) && button == InputEvent.Button.LEFT && isOverTurnButton()) {
+            loop.post(InputEvent.key('e'));
+            return;
+        }
+        int posX = camera.toTileX(core.mouseX);
+        int posY = camera.toTileY(core.mouseY - 1.5f * Tile.WIDTH);
+        loop.post(InputEvent.click(posX, posY, button));
+    }
+}
@@ -0,0 +1,31 @@
+package de.tfour.main.java;
+
+//runs the game without a window or processing: every creature, the player included, plays its turns on its own.
+//usage: Headless [turns] [seed] [-sequential]
+public class Headless {
+
+    public static void main(String... args) {
+        long turns = args.length > 0 ? Long.parseLong(args[0]) : 10000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        Game game = new Game(seed);
+        game.setAnimated(false);
+        game.setParallelPlanning(!(args.length > 2 && args[2].equals("-sequential")));
+        //nobody is there to give input, so the player wanders around like an ai creature
+        game.setAutoPlayer(true);
+        game.setup();
+        Player player = game.getPlayer();
+        long updates = 0;
+        long start = System.nanoTime();
+        while (game.getTurnCount() < turns && player.getHp() > 0) {
+            game.update();
+            updates++;
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.println("turns: " + game.getTurnCount() + ", updates: " + updates + ", time: " + nanos / 1000000 + "ms, "
+                + Math.round(game.getTurnCount() * 1e9 / Math.max(1, nanos)) + " turns/s");
+        System.out.println("player at " + player.getX() + "|" + player.getY() + ", hp " + player.getHp()
+                + ", map seen: " + game.getMap().getSeenTilesPercentage() + "%");
+        //identical for the same seed, whether the ai was planned in parallel or not
+        System.out.println("checksum: " + Long.toHexString(game.getChecksum()));
+    }
+}
@@ -0,0 +1,388 @@
+package de.tfour.main.java;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+//hierarchical pathfinding (hpa*) for goals far away. every chunk is a cluster. where two clusters can be crossed
+//(an entrance: a run of open tiles on both sides of their border) there is a node, in the middle of the entrance or at
+//both ends of a wide one. nodes of the same cluster are connected by their shortest path inside the cluster, which
+//is searched once and kept with the cluster, nodes facing each other across a border by a single step.
+//a query searches this graph, a few nodes per chunk instead of a thousand tiles, and then turns the result into
+//tiles: only the first segment (start to the first node) is searched on the tiles with GameMap.astar, so it walks
+//around creatures like any other path. the rest is put together from the kept paths, which only know the terrain.
+//clusters are built the first time a search reaches them and dropped when one of their tiles changes, so editing a
+//tile only rebuilds that cluster (and the one on the other side if the tile is on their border).
+class HierarchicalPathfinder {
+
+    //entrances at least this wide get a node at each end instead of one in the middle
+    private static final int WIDE_ENTRANCE = 6;
+    //keys of the start and the goal in the abstract search, which uses tile indices for the nodes
+    private static final int START = -1;
+    private static final int GOAL = -2;
+
+    private final GameMap map;
+    //by chunk index, null while not built
+    private Cluster[] clusters = new Cluster[0];
+
+    //scratch buffers for breadth first searches inside a cluster, by local index
+    private final int[] distance = new int[Chunk.AREA];
+    //the direction (GameMap.DIR order) in which the search stepped onto the tile
+    private final byte[] cameFrom = new byte[Chunk.AREA];
+    private final int[] queue = new int[Chunk.AREA];
+
+    //state of the abstract search. node scores only count if their stamp is the current generation.
+    private int generation;
+    private long[] heapKeys = new long[64];
+    private int[] heapNodes = new int[64];
+    private int heapSize;
+    private int goalG;
+    private int goalParent;
+
+    HierarchicalPathfinder(GameMap map) {
+        this.map = map;
+    }
+
+    //drops all clusters, e.g. because the map was replaced
+    void reset(int chunkCount) {
+        clusters = new Cluster[chunkCount];
+    }
+
+    void onTileChanged(int x, int y) {
+        int chunkX = x >> Chunk.BITS;
+        int chunkY = y >> Chunk.BITS;
+        invalidate(chunkX, chunkY);
+        //the entrances on a border belong to the clusters on both sides of it
+        if ((x & Chunk.MASK) == 0) invalidate(chunkX - 1, chunkY);
+        if ((x & Chunk.MASK) == Chunk.MASK) invalidate(chunkX + 1, chunkY);
+        if ((y & Chunk.MASK) == 0) invalidate(chunkX, chunkY - 1);
+        if ((y & Chunk.MASK) == Chunk.MASK) invalidate(chunkX, chunkY + 1);
+    }
+
+    private void invalidate(int chunkX, int chunkY) {
+        if (chunkX < 0 || chunkY < 0 || chunkX >= map.getChunksX() || chunkY >= map.getChunksY()) return;
+        clusters[chunkY * map.getChunksX() + chunkX] = null;
+    }
+
+    //same contract as GameMap.astar: the tiles from the start (exclusive) to the goal, or null if there is no path.
+    //the path may be a few steps longer than the shortest one.
+    ArrayList<Tile> findPath(Tile start, Tile goal) {
+        if (start == null || goal == null) return null;
+        int startIndex = start.getIndex();
+        int goalIndex = goal.getIndex();
+        int startChunk = startIndex >> Chunk.INDEX_BITS;
+        int goalChunk = goalIndex >> Chunk.INDEX_BITS;
+        if (!map.isViable(goalIndex)) return null;
+        if (startChunk == goalChunk) return map.astar(start, goal);
+
+        generation++;
+        if (generation <= 0) {
+            //the counter wrapped around, old stamps could collide with new searches
+            Arrays.fill(clusters, null);
+            generation = 1;
+        }
+        //how far the start is from the nodes of its cluster and the nodes of the goal's cluster are from the goal
+        Cluster startCluster = getCluster(startChunk);
+        int[] startCosts = nodeDistances(startChunk, startCluster, startIndex);
+        Cluster goalCluster = getCluster(goalChunk);
+        int[] goalCosts = nodeDistances(goalChunk, goalCluster, goalIndex);
+
+        //a* over the nodes. the scores of the nodes are kept in their clusters, the goal's in here.
+        heapSize = 0;
+        goalG = Integer.MAX_VALUE;
+        for (int k = 0; k < startCluster.nodes.length; k++) {
+            if (startCosts[k] >= 0) relax(startChunk, startCluster, k, startCosts[k], START, goalIndex);
+        }
+        boolean found = false;
+        while (heapSize > 0) {
+            int current = heapPop();
+            if (current == GOAL) {
+                found = true;
+                break;
+            }
+            int chunkIndex = current >> Chunk.INDEX_BITS;
+            Cluster cluster = getCluster(chunkIndex);
+            int k = cluster.find(current & (Chunk.AREA - 1));
+            if (cluster.closed[k] == generation) continue;
+            cluster.closed[k] = generation;
+            int g = cluster.g[k];
+            if (chunkIndex == goalChunk && goalCosts[k] >= 0 && g + goalCosts[k] < goalG) {
+                goalG = g + goalCosts[k];
+                goalParent = current;
+                heapPush(GOAL, goalG, goalG);
+            }
+            for (int j = 0; j < cluster.nodes.length; j++) {
+                if (j != k && cluster.costs[k][j] >= 0) relax(chunkIndex, cluster, j, g + cluster.costs[k][j], current, goalIndex);
+            }
+            //the node facing this one in the neighbouring cluster, if it is on a border
+            for (int d = 0; d < 4; d++) {
+                if (!Chunk.CROSSES_BORDER[(current & (Chunk.AREA - 1)) * 4 + d]) continue;
+                int n = map.getNeighbourIndex(current, d);
+                if (n == -1) continue;
+                Cluster other = getCluster(n >> Chunk.INDEX_BITS);
+                int j = other.find(n & (Chunk.AREA - 1));
+                if (j >= 0) relax(n >> Chunk.INDEX_BITS, other, j, g + 1, current, goalIndex);
+            }
+        }
+        if (!found) return null;
+
+        ArrayList<Integer> nodes = new ArrayList<>();
+        for (int node = goalParent; node != START; ) {
+            nodes.add(node);
+            Cluster cluster = clusters[node >> Chunk.INDEX_BITS];
+            node = cluster.parent[cluster.find(node & (Chunk.AREA - 1))];
+        }
+        Collections.reverse(nodes);
+        return refine(start, goal, nodes);
+    }
+
+    private void relax(int chunkIndex, Cluster cluster, int k, int g, int from, int goalIndex) {
+        if (cluster.stamp[k] == generation && cluster.g[k] <= g) return;
+        cluster.stamp[k] = generation;
+        cluster.g[k] = g;
+        cluster.parent[k] = from;
+        int node = (chunkIndex << Chunk.INDEX_BITS) | cluster.nodes[k];
+        heapPush(node, g + manhattan(node, goalIndex), g);
+    }
+
+    //binary min-heap of nodes, ordered by f. ties prefer the higher g, i.e. closer to the goal. a node can be in it
+    //several times, the entries that are not its best one are skipped when they come up.
+    private void heapPush(int node, int f, int g) {
+        if (heapSize == heapKeys.length) {
+            heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+            heapNodes = Arrays.copyOf(heapNodes, heapSize * 2);
+        }
+        long key = ((long) f << 32) | (Integer.MAX_VALUE - g);
+        int i = heapSize++;
+        while (i > 0) {
+            int up = (i - 1) >> 1;
+            if (heapKeys[up] <= key) break;
+            heapKeys[i] = heapKeys[up];
+            heapNodes[i] = heapNodes[up];
+            i = up;
+        }
+        heapKeys[i] = key;
+        heapNodes[i] = node;
+    }
+
+    private int heapPop() {
+        int top = heapNodes[0];
+        heapSize--;
+        long key = heapKeys[heapSize];
+        int node = heapNodes[heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) child++;
+            if (key <= heapKeys[child]) break;
+            heapKeys[i] = heapKeys[child];
+            heapNodes[i] = heapNodes[child];
+            i = child;
+        }
+        heapKeys[i] = key;
+        heapNodes[i] = node;
+        return top;
+    }
+
+    //turns the nodes of an abstract path into tiles
+    private ArrayList<Tile> refine(Tile start, Tile goal, ArrayList<Integer> nodes) {
+        int first = nodes.get(0);
+        //the first segment is searched for real, so it goes around creatures in the way. if creatures wall the first
+        //node off, an unbounded search would visit everything it can reach before it gives up. the node is in the
+        //start's chunk, so a detour that needs more than a chunk's worth of tiles is not worth looking for.
+        ArrayList<Tile> path = first == start.getIndex() ? new ArrayList<>() : map.astar(start, map.getTile(first), Chunk.AREA);
+        if (path == null) {
+            //nothing free leads there right now, follow the terrain and let the walker deal with it
+            path = new ArrayList<>();
+            int chunkIndex = start.getIndex() >> Chunk.INDEX_BITS;
+            search(map.getChunk(chunkIndex), start.getIndex() & (Chunk.AREA - 1));
+            for (int local = first & (Chunk.AREA - 1); distance[local] > 0; local = back(local)) {
+                path.add(map.getTile((chunkIndex << Chunk.INDEX_BITS) | local));
+            }
+            Collections.reverse(path);
+        }
+        for (int i = 1; i < nodes.size(); i++) {
+            int a = nodes.get(i - 1);
+            int b = nodes.get(i);
+            int chunkIndex = a >> Chunk.INDEX_BITS;
+            if (chunkIndex != b >> Chunk.INDEX_BITS) {
+                path.add(map.getTile(b));
+                continue;
+            }
+            Cluster cluster = getCluster(chunkIndex);
+            int ka = cluster.find(a & (Chunk.AREA - 1));
+            int kb = cluster.find(b & (Chunk.AREA - 1));
+            int current = a;
+            if (ka < kb) {
+                for (byte d : cluster.paths[ka][kb]) {
+                    current = map.getNeighbourIndex(current, d);
+                    path.add(map.getTile(current));
+                }
+            } else {
+                byte[] steps = cluster.paths[kb][ka];
+                for (int s = steps.length - 1; s >= 0; s--) {
+                    current = map.getNeighbourIndex(current, opposite(steps[s]));
+                    path.add(map.getTile(current));
+                }
+            }
+        }
+        //from the last node to the goal, stepping back along a search that started at the goal
+        int chunkIndex = goal.getIndex() >> Chunk.INDEX_BITS;
+        search(map.getChunk(chunkIndex), goal.getIndex() & (Chunk.AREA - 1));
+        for (int local = nodes.get(nodes.size() - 1) & (Chunk.AREA - 1); distance[local] > 0; ) {
+            local = back(local);
+            path.add(map.getTile((chunkIndex << Chunk.INDEX_BITS) | local));
+        }
+        return path;
+    }
+
+    //the tile the last search came from to reach the given one
+    private int back(int local) {
+        return Chunk.NEIGHBOUR_LOCAL[local * 4 + opposite(cameFrom[local])];
+    }
+
+    private static int opposite(int direction) {
+        return (direction + 2) & 3;
+    }
+
+    private int manhattan(int a, int b) {
+        return Math.abs(map.getX(a) - map.getX(b)) + Math.abs(map.getY(a) - map.getY(b));
+    }
+
+    //CLUSTERS
+
+    private Cluster getCluster(int chunkIndex) {
+        Cluster cluster = clusters[chunkIndex];
+        if (cluster == null) {
+            cluster = build(chunkIndex);
+            clusters[chunkIndex] = cluster;
+        }
+        return cluster;
+    }
+
+    private Cluster build(int chunkIndex) {
+        Chunk chunk = map.getChunk(chunkIndex);
+        int first = chunkIndex << Chunk.INDEX_BITS;
+        int[] nodes = new int[8];
+        int count = 0;
+        for (int d = 0; d < 4; d++) {
+            int runStart = -1;
+            for (int i = 0; i <= Chunk.SIZE; i++) {
+                boolean open = i < Chunk.SIZE && isEntrance(first | borderTile(d, i), d);
+                if (open && runStart < 0) runStart = i;
+                if (open || runStart < 0) continue;
+                //the run ended at i - 1. both clusters see the same run, so they put their nodes face to face.
+                int runEnd = i - 1;
+                if (count + 2 > nodes.length) nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                if (runEnd - runStart + 1 >= WIDE_ENTRANCE) {
+                    nodes[count++] = borderTile(d, runStart);
+                    nodes[count++] = borderTile(d, runEnd);
+                } else {
+                    nodes[count++] = borderTile(d, (runStart + runEnd) / 2);
+                }
+                runStart = -1;
+            }
+        }
+        Cluster cluster = new Cluster();
+        //a corner tile can be an entrance on two sides, it is still one node
+        cluster.nodes = Arrays.stream(nodes, 0, count).distinct().toArray();
+        int n = cluster.nodes.length;
+        cluster.g = new int[n];
+        cluster.parent = new int[n];
+        cluster.stamp = new int[n];
+        cluster.closed = new int[n];
+        cluster.costs = new int[n][n];
+        cluster.paths = new byte[n][n][];
+        for (int a = 0; a < n; a++) {
+            search(chunk, cluster.nodes[a]);
+            for (int b = 0; b < n; b++) {
+                int local = cluster.nodes[b];
+                cluster.costs[a][b] = distance[local];
+                if (b <= a || distance[local] < 0) continue;
+                byte[] steps = new byte[distance[local]];
+                for (int s = steps.length - 1; s >= 0; s--) {
+                    steps[s] = cameFrom[local];
+                    local = back(local);
+                }
+                cluster.paths[a][b] = steps;
+            }
+        }
+        return cluster;
+    }
+
+    //the i-th tile along the side of a chunk that faces the given direction
+    private static int borderTile(int direction, int i) {
+        switch (direction) {
+            case 0:
+                return Chunk.local(Chunk.MASK, i);
+            case 1:
+                return Chunk.local(i, Chunk.MASK);
+            case 2:
+                return Chunk.local(0, i);
+            default:
+                return Chunk.local(i, 0);
+        }
+    }
+
+    //whether the border can be crossed from the tile in the given direction
+    private boolean isEntrance(int index, int direction) {
+        if (map.isSolid(index)) return false;
+        int n = map.getNeighbourIndex(index, direction);
+        return n != -1 && !map.isSolid(n);
+    }
+
+    //the distance from a tile of the cluster to each of its nodes, -1 if a node cannot be reached
+    private int[] nodeDistances(int chunkIndex, Cluster cluster, int index) {
+        search(map.getChunk(chunkIndex), index & (Chunk.AREA - 1));
+        int[] costs = new int[cluster.nodes.length];
+        for (int k = 0; k < costs.length; k++) {
+            costs[k] = distance[cluster.nodes[k]];
+        }
+        return costs;
+    }
+
+    //breadth first search over the open tiles of the chunk, without leaving it. fills distance (-1 if not reached)
+    //and cameFrom.
+    private void search(Chunk chunk, int from) {
+        Arrays.fill(distance, -1);
+        distance[from] = 0;
+        queue[0] = from;
+        int head = 0;
+        int tail = 1;
+        while (head < tail) {
+            int current = queue[head++];
+            for (int d = 0; d < 4; d++) {
+                int slot = current * 4 + d;
+                if (Chunk.CROSSES_BORDER[slot]) continue;
+                int n = Chunk.NEIGHBOUR_LOCAL[slot];
+                if (distance[n] >= 0 || Chunk.getBit(chunk.solid, n)) continue;
+                distance[n] = distance[current] + 1;
+                cameFrom[n] = (byte) d;
+                queue[tail++] = n;
+            }
+        }
+    }
+
+    private static final class Cluster {
+        //local index of every node
+        int[] nodes;
+        //steps between two nodes inside the cluster, -1 if one cannot reach the other
+        int[][] costs;
+        //for a < b: the directions to walk from node a to node b. b to a walks them backwards.
+        byte[][][] paths;
+        //search state per node: best known steps from the start, the node before (a tile index) and the generation
+        //of the search that set them and that closed the node
+        int[] g;
+        int[] parent;
+        int[] stamp;
+        int[] closed;
+
+        int find(int local) {
+            for (int k = 0; k < nodes.length; k++) {
+                if (nodes[k] == local) return k;
+            }
+            return -1;
+        }
+    }
+}
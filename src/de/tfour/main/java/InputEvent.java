@@ -0,0 +1,61 @@
+package de.tfour.main.java;
+
+//a key press or a click on a tile. GameRenderer translates processing's input into these, so the game itself
+//does not depend on a window and input can also come from somewhere else (e.g. a script or a recording).
+public final class InputEvent {
+
+    public enum Type {
+        KEY, CLICK
+    }
+
+    public enum Button {
+        LEFT, RIGHT, CENTER
+    }
+
+    private final Type type;
+    private final char key;
+    private final int tileX;
+    private final int tileY;
+    private final Button button;
+
+    private InputEvent(Type type, char key, int tileX, int tileY, Button button) {
+        this.type = type;
+        this.key = key;
+        this.tileX = tileX;
+        this.tileY = tileY;
+        this.button = button;
+    }
+
+    public static InputEvent key(char key) {
+        return new InputEvent(Type.KEY, key, 0, 0, null);
+    }
+
+    //tileX and tileY are map coordinates and may lie outside of the map
+    public static InputEvent click(int tileX, int tileY, Button button) {
+        return new InputEvent(Type.CLICK, (char) 0, tileX, tileY, button);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public char getKey() {
+        return key;
+    }
+
+    public int getTileX() {
+        return tileX;
+    }
+
+    public int getTileY() {
+        return tileY;
+    }
+
+    public Button getButton() {
+        return button;
+    }
+
+    public String toString() {
+        return type == Type.KEY ? "key " + key : "click " + button + " " + tileX + "|" + tileY;
+    }
+}
@@ -0,0 +1,58 @@
+package de.tfour.main.java;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+//writes everything needed to play a session again: the game's seed and settings, every input with the update it was
+//handed to the game before, and the game's checksum every CHECK_UPDATES updates. Replay reads the file back and runs
+//the same updates without a window, as fast as it can, and reports where the checksums stop matching.
+//every line is flushed right away, so a recording is complete up to the last input even if the game crashes.
+//
+//format (one entry per line, fields separated by spaces):
+//  tfour-recording <version>
+//  game <seed> <animated> <auto player>
+//  key <update> <turn> <char code>
+//  click <update> <turn> <button> <tile x> <tile y>
+//  check <update> <turn> <checksum in hex>
+public class InputRecorder {
+
+    static final String HEADER = "tfour-recording";
+    static final int VERSION = 1;
+    //how often a checksum is written, once every ten seconds at the normal speed
+    static final int CHECK_UPDATES = 10 * GameLoop.TICKS_PER_SECOND;
+
+    private final Game game;
+    private final PrintWriter out;
+
+    //has to be created before the game is set up, so the recording starts with the first update
+    public InputRecorder(Game game, File file) throws IOException {
+        this.game = game;
+        this.out = new PrintWriter(new FileWriter(file));
+        out.println(HEADER + " " + VERSION);
+        out.println("game " + game.getSeed() + " " + game.isAnimated() + " " + game.isAutoPlayer());
+        out.flush();
+    }
+
+    void record(InputEvent e) {
+        String prefix = game.getUpdateCount() + " " + game.getTurnCount();
+        if (e.getType() == InputEvent.Type.KEY) {
+            out.println("key " + prefix + " " + (int) e.getKey());
+        } else {
+            out.println("click " + prefix + " " + e.getButton() + " " + e.getTileX() + " " + e.getTileY());
+        }
+        out.flush();
+    }
+
+    //called after every update
+    void updated() {
+        if (game.getUpdateCount() % CHECK_UPDATES != 0) return;
+        out.println("check " + game.getUpdateCount() + " " + game.getTurnCount() + " " + Long.toHexString(game.getChecksum()));
+        out.flush();
+    }
+
+    public void close() {
+        out.close();
+    }
+}
@@ -4,14 +4,11 @@ import java.util.ArrayList;
 
 public class Inventory {
 
-    private final Core core;
-
     private final ArrayList<Item> items;
 
     public static final int ITEMSTACK_MAX = 4;
 
-    public Inventory(Core core) {
-        this.core = core;
+    public Inventory() {
         this.items = new ArrayList<>();
     }
 
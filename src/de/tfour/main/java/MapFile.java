@@ -0,0 +1,224 @@
+package de.tfour.main.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+//binary map format. the file is memory mapped and chunks are decoded straight from the mapping when the map first needs them.
+//a mapping lives until it is garbage collected, and windows does not let a mapped file be replaced. the file a map was
+//loaded from is still mapped (by the map, the prefetcher or a savegame) when it is saved again, so every save writes a
+//new file: <name>.tfm, then <name>.1.tfm, <name>.2.tfm and so on. the newest one is the map, the older ones are deleted
+//once nothing maps them anymore.
+//
+//layout (big endian):
+//  magic "TFMP", u16 version, u8 chunk bits, u8 reserved, i32 width, i32 height
+//  chunk table: per chunk (chunk major order) i32 offset and i32 length of its data, offset 0 if the chunk is not stored
+//  chunk data: runs of (varint length, varint tile id + 1) over the chunk's tiles in local order. id 0 is TileType.VOID.
+class MapFile {
+
+    static final String EXTENSION = ".tfm";
+    private static final int MAGIC = 0x54464D50;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    private final ByteBuffer buffer;
+    private final int width;
+    private final int height;
+    private final int chunkCount;
+
+    private MapFile(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) throw new IOException("not a map file");
+        int version = buffer.getShort(4) & 0xffff;
+        if (version > VERSION) throw new IOException("unsupported map file version " + version);
+        if (buffer.get(6) != Chunk.BITS) throw new IOException("unsupported chunk size " + (1 << buffer.get(6)));
+        this.width = buffer.getInt(8);
+        this.height = buffer.getInt(12);
+        int chunksX = (width + Chunk.MASK) >> Chunk.BITS;
+        int chunksY = (height + Chunk.MASK) >> Chunk.BITS;
+        this.chunkCount = chunksX * chunksY;
+        if (buffer.limit() < HEADER_SIZE + chunkCount * 8) throw new IOException("truncated map file");
+    }
+
+    //maps the file into memory. nothing is decoded yet.
+    static MapFile open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MapFile(buffer);
+        }
+    }
+
+    //the newest file of the map in the folder (which ends with a separator), or null if there is none
+    static File newest(String directory, String name) {
+        File newest = null;
+        long newestGeneration = -1;
+        File[] files = new File(directory).listFiles();
+        if (files == null) return null;
+        for (File f : files) {
+            long generation = generation(f.getName(), name);
+            if (generation > newestGeneration) {
+                newest = f;
+                newestGeneration = generation;
+            }
+        }
+        return newest;
+    }
+
+    //the file the map is saved to next, one that does not exist yet
+    static File next(String directory, String name) {
+        File newest = newest(directory, name);
+        if (newest == null) return new File(directory + name + EXTENSION);
+        return new File(directory + name + "." + (generation(newest.getName(), name) + 1) + EXTENSION);
+    }
+
+    //deletes the files of the map other than the given one. a file that is still mapped cannot be deleted on windows,
+    //it is left for a later save.
+    static void deleteOthers(String directory, String name, File keep) {
+        File[] files = new File(directory).listFiles();
+        if (files == null) return;
+        for (File f : files) {
+            if (generation(f.getName(), name) >= 0 && !f.equals(keep)) f.delete();
+        }
+    }
+
+    //0 for <name>.tfm, n for <name>.n.tfm, -1 if the file does not belong to the map
+    private static long generation(String fileName, String name) {
+        if (fileName.equals(name + EXTENSION)) return 0;
+        if (!fileName.startsWith(name + ".") || !fileName.endsWith(EXTENSION)) return -1;
+        String generation = fileName.substring(name.length() + 1, fileName.length() - EXTENSION.length());
+        for (int i = 0; i < generation.length(); i++) {
+            if (!Character.isDigit(generation.charAt(i))) return -1;
+        }
+        try {
+            return Long.parseLong(generation);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    boolean hasChunk(int chunkIndex) {
+        return buffer.getInt(HEADER_SIZE + chunkIndex * 8) != 0;
+    }
+
+    //decodes the tile ids of a stored chunk into the given chunk
+    void readChunk(int chunkIndex, Chunk chunk) throws IOException {
+        int offset = buffer.getInt(HEADER_SIZE + chunkIndex * 8);
+        int length = buffer.getInt(HEADER_SIZE + chunkIndex * 8 + 4);
+        if (offset == 0) return;
+        decodeChunk(buffer, offset, length, chunk);
+    }
+
+    //decodes tile ids written by encodeChunk into the given chunk. savegames store chunks the same way.
+    static void decodeChunk(ByteBuffer buffer, int offset, int length, Chunk chunk) throws IOException {
+        int[] pos = {offset};
+        int end = offset + length;
+        int local = 0;
+        while (local < Chunk.AREA && pos[0] < end) {
+            int run = readVarint(buffer, pos);
+            int id = readVarint(buffer, pos) - 1;
+            if (run <= 0 || local + run > Chunk.AREA) throw new IOException("corrupt chunk " + chunk.chunkX + "|" + chunk.chunkY);
+            for (int i = 0; i < run; i++, local++) {
+                //cells outside of the map are decided by the map size, not by the file
+                if (chunk.isInside(local) && id != TileType.VOID) chunk.setType(local, TileType.get(id).getId());
+            }
+        }
+    }
+
+    //the encoded bytes of a stored chunk, so it can be written again without decoding it
+    byte[] rawChunk(int chunkIndex) {
+        int offset = buffer.getInt(HEADER_SIZE + chunkIndex * 8);
+        int length = buffer.getInt(HEADER_SIZE + chunkIndex * 8 + 4);
+        byte[] raw = new byte[length];
+        for (int i = 0; i < length; i++) {
+            raw[i] = buffer.get(offset + i);
+        }
+        return raw;
+    }
+
+    //writes all created chunks. chunks that only exist in the source file (never loaded) are copied over as they are.
+    static void write(File file, int width, int height, Chunk[] chunks, MapFile source) throws IOException {
+        byte[][] encoded = new byte[chunks.length][];
+        for (int i = 0; i < chunks.length; i++) {
+            if (chunks[i] != null) {
+                encoded[i] = encodeChunk(chunks[i].types);
+            } else if (source != null && source.chunkCount == chunks.length && source.hasChunk(i)) {
+                encoded[i] = source.rawChunk(i);
+            }
+        }
+        int size = HEADER_SIZE + chunks.length * 8;
+        for (byte[] e : encoded) {
+            if (e != null) size += e.length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(MAGIC).putShort((short) VERSION).put((byte) Chunk.BITS).put((byte) 0).putInt(width).putInt(height);
+        int offset = HEADER_SIZE + chunks.length * 8;
+        for (byte[] e : encoded) {
+            out.putInt(e == null ? 0 : offset).putInt(e == null ? 0 : e.length);
+            if (e != null) offset += e.length;
+        }
+        for (byte[] e : encoded) {
+            if (e != null) out.put(e);
+        }
+        out.flip();
+        //write next to the target and move it there, so a crash never leaves half a map that would be loaded
+        File tmp = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw"); FileChannel channel = raf.getChannel()) {
+            raf.setLength(0);
+            while (out.hasRemaining()) channel.write(out);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    //run length encodes the tile ids of a chunk
+    static byte[] encodeChunk(short[] types) {
+        byte[] out = new byte[64];
+        int[] pos = {0};
+        int local = 0;
+        while (local < Chunk.AREA) {
+            short id = types[local];
+            int run = 1;
+            while (local + run < Chunk.AREA && types[local + run] == id) run++;
+            out = writeVarint(out, pos, run);
+            out = writeVarint(out, pos, id + 1);
+            local += run;
+        }
+        return Arrays.copyOf(out, pos[0]);
+    }
+
+    //unsigned LEB128: 7 bits per byte, the high bit marks that more bytes follow
+    private static byte[] writeVarint(byte[] out, int[] pos, int value) {
+        if (pos[0] + 5 > out.length) out = Arrays.copyOf(out, out.length * 2);
+        while ((value & ~0x7f) != 0) {
+            out[pos[0]++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out[pos[0]++] = (byte) value;
+        return out;
+    }
+
+    private static int readVarint(ByteBuffer buffer, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get(pos[0]++);
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0 && shift < 35);
+        return value;
+    }
+}
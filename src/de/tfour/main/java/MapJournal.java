@@ -0,0 +1,66 @@
+package de.tfour.main.java;
+
+//remembers the last CAPACITY changes to a map: which tile changed and what about it changed. every change gets the
+//map version it created, so whoever cached something computed from the map can ask what changed since then and only
+//redo the part that is affected. older changes are overwritten, then the answer is "too much", and everything has to
+//be recomputed like without a journal.
+class MapJournal {
+
+    enum Change {
+        //the tile type, i.e. also whether it is solid or opaque
+        TYPE,
+        //a creature entered or left the tile
+        OCCUPANCY,
+        //items were put on or taken from the tile
+        ITEMS
+    }
+
+    interface Visitor {
+        void changed(int index, Change change);
+    }
+
+    private static final Change[] CHANGES = Change.values();
+    static final int CAPACITY = 4096;
+
+    //change of version v is stored at v % CAPACITY
+    private final int[] indices = new int[CAPACITY];
+    private final byte[] changes = new byte[CAPACITY];
+    //the version of the newest change, and the oldest version changes since which are still known
+    private int version;
+    private int oldestVersion;
+
+    //records the change that created the given version, which has to be one more than the version before
+    void record(int version, int index, Change change) {
+        this.version = version;
+        int slot = Math.floorMod(version, CAPACITY);
+        indices[slot] = index;
+        changes[slot] = (byte) change.ordinal();
+        if (version - oldestVersion > CAPACITY) oldestVersion = version - CAPACITY;
+    }
+
+    //forgets everything, e.g. because the whole map was replaced. changes since earlier versions are unknown after that.
+    void clear(int version) {
+        this.version = version;
+        this.oldestVersion = version;
+    }
+
+    //hands every change made after the given version to the visitor, oldest first. returns false without visiting
+    //anything if the journal does not reach back that far.
+    boolean changesSince(int since, Visitor visitor) {
+        if (!knows(since)) return false;
+        for (int v = since + 1; v - version <= 0; v++) {
+            int slot = Math.floorMod(v, CAPACITY);
+            visitor.changed(indices[slot], CHANGES[changes[slot]]);
+        }
+        return true;
+    }
+
+    //whether the changes since the given version are all still known
+    boolean knows(int since) {
+        return since - oldestVersion >= 0 && version - since >= 0;
+    }
+
+    int getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,135 @@
+package de.tfour.main.java;
+
+import java.util.Arrays;
+
+//the tiles a creature can reach with its remaining ap, together with the ap each of them costs.
+//the pool is computed with a single breadth first search and reused until the creature's position, ap or the map change.
+public class MovePool {
+
+    //ap cost per tile in a (2 * radius + 1) by (2 * radius + 1) window around the origin. -1 means not reachable.
+    private int[] cost = new int[0];
+    //reachable tiles as map tile indices, in the order they were found (i.e. sorted by cost)
+    private int[] tiles = new int[0];
+    private int size;
+
+    private int originX = -1;
+    private int originY = -1;
+    private int radius;
+    private int side;
+
+    //state the pool was computed for
+    private int computedAp = -1;
+    private int computedVersion = -1;
+    private GameMap computedMap;
+    //set by the visitor when a change of the map's journal touches the pool
+    private boolean affected;
+    private final MapJournal.Visitor changeVisitor = new MapJournal.Visitor() {
+        public void changed(int index, MapJournal.Change change) {
+            //items do not block anything
+            if (change != MapJournal.Change.ITEMS && inWindow(computedMap.getX(index), computedMap.getY(index))) affected = true;
+        }
+    };
+
+    //recomputes the pool if anything it depends on changed. returns true if it was recomputed.
+    public boolean update(GameMap map, int x, int y, int ap) {
+        if (map == computedMap && x == originX && y == originY && ap == computedAp && !isAffected()) {
+            computedVersion = map.getVersion();
+            return false;
+        }
+        computedMap = map;
+        computedVersion = map.getVersion();
+        computedAp = ap;
+        originX = x;
+        originY = y;
+        radius = Math.max(ap, 0);
+        side = 2 * radius + 1;
+        int area = side * side;
+        if (cost.length < area) {
+            cost = new int[area];
+            tiles = new int[area];
+        }
+        Arrays.fill(cost, 0, area, -1);
+        size = 0;
+        if (ap <= 0) return true;
+
+        //bfs over the window. the tiles array doubles as the queue, the origin itself is not part of the pool.
+        cost[radius * side + radius] = 0;
+        int head = -1;
+        int current = map.index(x, y);
+        int currentCost = 0;
+        while (true) {
+            if (currentCost < ap) {
+                for (int d = 0; d < 4; d++) {
+                    int n = map.getNeighbourIndex(current, d);
+                    if (n == -1) continue;
+                    int w = window(map.getX(n), map.getY(n));
+                    if (cost[w] != -1 || !map.isViable(n)) continue;
+                    cost[w] = currentCost + 1;
+                    tiles[size++] = n;
+                }
+            }
+            head++;
+            if (head >= size) break;
+            current = tiles[head];
+            currentCost = cost[window(map.getX(current), map.getY(current))];
+        }
+        return true;
+    }
+
+    //whether the map changed within the pool's window since the pool was computed
+    private boolean isAffected() {
+        GameMap map = computedMap;
+        int version = map.getVersion();
+        if (version == computedVersion) return false;
+        MapJournal journal = map.getJournal();
+        //going through more changes than the search would visit tiles is not worth it
+        if (!journal.knows(computedVersion) || version - computedVersion > side * side) return true;
+        //most changes happen somewhere else on the map, which the versions of the chunks around the pool tell quickly
+        boolean chunkChanged = false;
+        for (int cy = Math.max(0, originY - radius) >> Chunk.BITS; cy <= Math.min(map.getHeight() - 1, originY + radius) >> Chunk.BITS; cy++) {
+            for (int cx = Math.max(0, originX - radius) >> Chunk.BITS; cx <= Math.min(map.getWidth() - 1, originX + radius) >> Chunk.BITS; cx++) {
+                if (map.getChunkVersion(cx, cy) - computedVersion > 0) chunkChanged = true;
+            }
+        }
+        if (!chunkChanged) return false;
+        affected = false;
+        journal.changesSince(computedVersion, changeVisitor);
+        return affected;
+    }
+
+    private int window(int x, int y) {
+        return (y - originY + radius) * side + (x - originX + radius);
+    }
+
+    private boolean inWindow(int x, int y) {
+        return Math.abs(x - originX) <= radius && Math.abs(y - originY) <= radius;
+    }
+
+    //ap needed to reach the given position, -1 if it is not part of the pool
+    public int getCost(int x, int y) {
+        if (size == 0 || !inWindow(x, y)) return -1;
+        return cost[window(x, y)];
+    }
+
+    public boolean contains(int x, int y) {
+        return getCost(x, y) > 0;
+    }
+
+    public boolean contains(Tile t) {
+        return t != null && contains(t.getX(), t.getY());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    //x position of the i-th tile of the pool
+    public int getX(int i) {
+        return computedMap.getX(tiles[i]);
+    }
+
+    //y position of the i-th tile of the pool
+    public int getY(int i) {
+        return computedMap.getY(tiles[i]);
+    }
+}
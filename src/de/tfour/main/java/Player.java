@@ -1,32 +1,26 @@
 package de.tfour.main.java;
 
-import processing.core.PApplet;
-import processing.core.PImage;
-
 public class Player extends Creature {
 
-    public static Player create(Core core, int x, int y) {
-        Player p = new Player(core,x,y);
-        Tile tile = core.getGame().getMap().getTile(x, y);
+    public static Player create(Game game, int x, int y) {
+        Player p = new Player(game, x, y);
+        Tile tile = game.getMap().getTile(x, y);
         if (tile != null && tile.getCreature() == null) {
             tile.setCreature(p);
+            //a creature that could not be placed is nowhere on the map, so the index must not find it anywhere either
+            game.getCreatureIndex().add(p);
         }
         return p;
     }
 
-    private Player(Core core, int x, int y) {
-        super(core, x, y, 'P');
-        this.name = "Player";
-        this.img = new PImage[12];
-        for (int i = 0; i < 12; i++) {
-            img[i] = core.loadImage("src/de/tfour/main/resources/player/p"+ PApplet.nf(i,2)+".png");
-        }
+    private Player(Game game, int x, int y) {
+        super(game, x, y, 'P');
+        setName("Player");
     }
 
     public boolean move(int direction) {
         boolean out = super.move(direction);
-        core.getGame().getMap().updateTileVisibility();
-        core.getGame().getMap().updateSeenTilesPercentage();
+        game.getMap().updateTileVisibility();
         return out;
     }
 }
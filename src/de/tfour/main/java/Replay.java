@@ -0,0 +1,80 @@
+package de.tfour.main.java;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+
+//plays a session recorded by InputRecorder again, without a window and as fast as possible: the same seed, the same
+//input before the same updates. the recorded checksums are compared along the way, the first one that differs shows
+//when the replay went another way than the session (e.g. because a change made the game rules behave differently).
+//the replay loads the map from the files as they are now. a session that saved the map (key S) or loaded a savegame
+//(key L) only replays the same way as long as those files are still the ones it started from.
+//usage: Replay <recording> [-sequential]
+public class Replay {
+
+    public static void main(String... args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("usage: Replay <recording> [-sequential]");
+            return;
+        }
+        File file = new File(args[0]);
+        ArrayList<String[]> entries = new ArrayList<>();
+        long seed;
+        boolean animated;
+        boolean autoPlayer;
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String[] header = in.readLine().split(" ");
+            if (!header[0].equals(InputRecorder.HEADER)) throw new IOException("not a recording: " + file);
+            if (Integer.parseInt(header[1]) > InputRecorder.VERSION) throw new IOException("unsupported recording version " + header[1]);
+            String[] settings = in.readLine().split(" ");
+            seed = Long.parseLong(settings[1]);
+            animated = Boolean.parseBoolean(settings[2]);
+            autoPlayer = Boolean.parseBoolean(settings[3]);
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                if (!line.isEmpty()) entries.add(line.split(" "));
+            }
+        }
+
+        Game game = new Game(seed);
+        game.setAnimated(animated);
+        game.setAutoPlayer(autoPlayer);
+        game.setParallelPlanning(!(args.length > 1 && args[1].equals("-sequential")));
+        game.setup();
+        int checks = 0;
+        String divergence = null;
+        long start = System.nanoTime();
+        for (String[] entry : entries) {
+            long update = Long.parseLong(entry[1]);
+            while (game.getUpdateCount() < update) {
+                game.update();
+            }
+            switch (entry[0]) {
+                case "key":
+                    game.handleInput(InputEvent.key((char) Integer.parseInt(entry[3])));
+                    break;
+                case "click":
+                    game.handleInput(InputEvent.click(Integer.parseInt(entry[4]), Integer.parseInt(entry[5]),
+                            InputEvent.Button.valueOf(entry[3])));
+                    break;
+                case "check":
+                    checks++;
+                    String checksum = Long.toHexString(game.getChecksum());
+                    if (!checksum.equals(entry[3])) {
+                        divergence = "update " + update + " (turn " + entry[2] + "): recorded " + entry[3] + ", replayed " + checksum;
+                    }
+                    break;
+                default:
+                    throw new IOException("unknown entry in recording: " + entry[0]);
+            }
+            //everything after the first difference differs as well
+            if (divergence != null) break;
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.println("updates: " + game.getUpdateCount() + ", turns: " + game.getTurnCount() + ", time: " + nanos / 1000000
+                + "ms, " + Math.round(game.getUpdateCount() * 1e9 / Math.max(1, nanos)) + " updates/s");
+        System.out.println(divergence == null ? "all " + checks + " checksums match" : "diverged at " + divergence);
+        System.out.println("checksum: " + Long.toHexString(game.getChecksum()));
+    }
+}
@@ -0,0 +1,484 @@
+package de.tfour.main.java;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//savegames: the whole state of a game (map, items, creatures, turn order) in a compact binary file.
+//saving takes a snapshot on the game's thread, which only copies what changed since the last full autosave and shares
+//the rest with it. encoding and writing the snapshot happen on a background thread.
+//autosaves are deltas: they only contain the chunks that changed since the last full autosave, which they are loaded on top of.
+//
+//layout (big endian):
+//  magic "TFSG", u16 version, u8 kind (0 full, 1 delta), i64 id, i64 id of the full savegame a delta is based on
+//  map: utf name, i32 width, i32 height, i32 number of chunk records
+//    per record: i32 chunk index, i32 length + tile ids encoded like in MapFile, u8 1 if 16 i64 of seen bits follow,
+//    u16 number of items, per item u16 local index and u16 model
+//  game: i64 turn count, u8 mode, i64 scheduler time, i64 scheduler sequence, i64 state of the game's random source
+//    (since version 2)
+//  creatures: i32 count, per creature u8 flags, utf name, u16 model, i32 x, i32 y, i32 hp, i32 ap, u8 direction,
+//    i32 speed, i64 next turn time, i64 turn sequence, i32 dormant chunk, u16 number of inventory items + u16 model each
+//a delta has the chunk records of the chunks that changed since its full savegame, everything else is always written.
+class SaveGame {
+
+    static final String DIRECTORY = "saves/";
+    static final String EXTENSION = ".tfs";
+    private static final String DELTA_SUFFIX = ".delta";
+    static final String QUICKSAVE = "quicksave";
+    static final String AUTOSAVE = "autosave";
+    private static final int MAGIC = 0x54465347;
+    private static final int VERSION = 2;
+    private static final int FULL = 0;
+    private static final int DELTA = 1;
+    //after this many deltas the next autosave is a full one again, so the deltas do not keep growing
+    private static final int DELTAS_PER_FULL = 10;
+
+    //creature flags
+    private static final int PLAYER = 1;
+    private static final int SCHEDULED = 2;
+    private static final int DORMANT = 4;
+    private static final int TO_MOVE = 8;
+    private static final int MY_TURN = 16;
+
+    private final Game game;
+    //the last full autosave, deltas are made against it
+    private Snapshot autosaveBase;
+    private int deltasSinceFull;
+    //encodes and writes the savegames one after the other, so a delta never reaches the disk before its full savegame.
+    //shared by all games, so loading always waits for whatever is still being saved.
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "SaveGame");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    SaveGame(Game game) {
+        this.game = game;
+    }
+
+    //writes a full savegame of the current state in the background
+    void save(String name) {
+        write(name, capture(autosaveBase, false));
+    }
+
+    //writes a delta against the last full autosave, or a full autosave if there is none (or it is time for one)
+    void autosave() {
+        boolean delta = autosaveBase != null && autosaveBase.resizeVersion == game.getMap().getResizeVersion()
+                && deltasSinceFull < DELTAS_PER_FULL;
+        Snapshot snapshot = capture(autosaveBase, delta);
+        if (delta) {
+            deltasSinceFull++;
+        } else {
+            autosaveBase = snapshot;
+            deltasSinceFull = 0;
+        }
+        write(AUTOSAVE, snapshot);
+    }
+
+    //replaces the current game with a savegame, and the delta written after it if there is one.
+    //returns false if there is no such savegame or it could not be read.
+    boolean load(String name) {
+        //a save that is still being written would otherwise be missed
+        try {
+            writer.submit(() -> {
+            }).get();
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+        }
+        File file = getFile(name, false);
+        if (!file.exists()) return false;
+        try {
+            Snapshot full = read(file);
+            File deltaFile = getFile(name, true);
+            Snapshot delta = deltaFile.exists() ? read(deltaFile) : null;
+            if (delta != null && delta.baseId != full.id) delta = null;
+            apply(full, delta);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static File getFile(String name, boolean delta) {
+        return new File(DIRECTORY + name + (delta ? DELTA_SUFFIX : "") + EXTENSION);
+    }
+
+    //CAPTURING
+
+    //copies the state of the game. chunks that did not change since the base snapshot are shared with it, a delta
+    //leaves them out.
+    private Snapshot capture(Snapshot base, boolean delta) {
+        GameMap map = game.getMap();
+        if (base != null && base.resizeVersion != map.getResizeVersion()) base = null;
+        Snapshot s = new Snapshot();
+        s.id = System.nanoTime();
+        s.delta = delta;
+        s.baseId = delta ? base.id : 0;
+        s.mapName = map.getName();
+        s.width = map.getWidth();
+        s.height = map.getHeight();
+        s.resizeVersion = map.getResizeVersion();
+        s.mapVersion = map.getVersion();
+        s.chunks = new ChunkState[map.getChunksX() * map.getChunksY()];
+        MapFile source = map.getChunkSource();
+        for (int i = 0; i < s.chunks.length; i++) {
+            Chunk chunk = map.peekChunk(i % map.getChunksX(), i / map.getChunksX());
+            ChunkState previous = base == null ? null : base.chunks[i];
+            if (chunk == null) {
+                //never loaded, so it is still what the map file says
+                if (!delta && source != null && source.hasChunk(i)) s.chunks[i] = ChunkState.fromSource(source, i);
+                continue;
+            }
+            boolean unchanged = previous != null && chunk.version - base.mapVersion <= 0 && chunk.seenTileCount == previous.seenCount;
+            if (unchanged) {
+                if (!delta) s.chunks[i] = previous;
+            } else {
+                s.chunks[i] = ChunkState.fromChunk(chunk);
+            }
+        }
+        s.turnCount = game.getTurnCount();
+        s.mode = game.getMode().ordinal();
+        TurnScheduler scheduler = game.getScheduler();
+        s.schedulerNow = scheduler.getNow();
+        s.schedulerSequence = scheduler.getSequence();
+        s.randomState = game.getRandom().getState();
+        ArrayList<Creature> creatures = game.getCreatureIndex().getAll(new ArrayList<>());
+        s.creatures = new CreatureState[creatures.size()];
+        for (int i = 0; i < creatures.size(); i++) {
+            s.creatures[i] = CreatureState.fromCreature(creatures.get(i), game);
+        }
+        return s;
+    }
+
+    //only failures are reported, an autosave every few turns would flood the console otherwise
+    private void write(String name, Snapshot snapshot) {
+        writer.execute(() -> {
+            try {
+                byte[] data = encode(snapshot);
+                File file = getFile(name, snapshot.delta);
+                file.getParentFile().mkdirs();
+                //write next to the target and swap it in, so a crash never leaves half a savegame
+                File tmp = new File(file.getPath() + ".tmp");
+                try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw"); FileChannel channel = raf.getChannel()) {
+                    raf.setLength(0);
+                    ByteBuffer out = ByteBuffer.wrap(data);
+                    while (out.hasRemaining()) channel.write(out);
+                }
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    //ENCODING
+
+    private static byte[] encode(Snapshot s) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeByte(s.delta ? DELTA : FULL);
+        out.writeLong(s.id);
+        out.writeLong(s.baseId);
+        out.writeUTF(s.mapName);
+        out.writeInt(s.width);
+        out.writeInt(s.height);
+        int records = 0;
+        for (ChunkState c : s.chunks) {
+            if (c != null) records++;
+        }
+        out.writeInt(records);
+        for (int i = 0; i < s.chunks.length; i++) {
+            ChunkState c = s.chunks[i];
+            if (c == null) continue;
+            out.writeInt(i);
+            byte[] types = c.getEncodedTypes();
+            out.writeInt(types.length);
+            out.write(types);
+            out.writeByte(c.seen != null ? 1 : 0);
+            if (c.seen != null) {
+                for (long bits : c.seen) {
+                    out.writeLong(bits);
+                }
+            }
+            out.writeShort(c.itemTiles.length);
+            for (int j = 0; j < c.itemTiles.length; j++) {
+                out.writeShort(c.itemTiles[j]);
+                out.writeChar(c.itemModels[j]);
+            }
+        }
+        out.writeLong(s.turnCount);
+        out.writeByte(s.mode);
+        out.writeLong(s.schedulerNow);
+        out.writeLong(s.schedulerSequence);
+        out.writeLong(s.randomState);
+        out.writeInt(s.creatures.length);
+        for (CreatureState c : s.creatures) {
+            out.writeByte(c.flags);
+            out.writeUTF(c.name);
+            out.writeChar(c.model);
+            out.writeInt(c.x);
+            out.writeInt(c.y);
+            out.writeInt(c.hp);
+            out.writeInt(c.ap);
+            out.writeByte(c.direction);
+            out.writeInt(c.speed);
+            out.writeLong(c.nextTurnTime);
+            out.writeLong(c.turnSequence);
+            out.writeInt(c.dormantChunk);
+            out.writeShort(c.inventory.length);
+            for (char model : c.inventory) {
+                out.writeChar(model);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Snapshot read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) throw new IOException("not a savegame: " + file);
+            int version = in.readUnsignedShort();
+            if (version > VERSION) throw new IOException("unsupported savegame version " + version);
+            Snapshot s = new Snapshot();
+            s.delta = in.readUnsignedByte() == DELTA;
+            s.id = in.readLong();
+            s.baseId = in.readLong();
+            s.mapName = in.readUTF();
+            s.width = in.readInt();
+            s.height = in.readInt();
+            s.chunks = new ChunkState[((s.width + Chunk.MASK) >> Chunk.BITS) * ((s.height + Chunk.MASK) >> Chunk.BITS)];
+            int records = in.readInt();
+            for (int r = 0; r < records; r++) {
+                int i = in.readInt();
+                if (i < 0 || i >= s.chunks.length) throw new IOException("corrupt savegame: " + file);
+                ChunkState c = new ChunkState();
+                c.encoded = new byte[in.readInt()];
+                in.readFully(c.encoded);
+                if (in.readUnsignedByte() == 1) {
+                    c.seen = new long[Chunk.AREA / 64];
+                    for (int j = 0; j < c.seen.length; j++) {
+                        c.seen[j] = in.readLong();
+                    }
+                }
+                int items = in.readUnsignedShort();
+                c.itemTiles = new int[items];
+                c.itemModels = new char[items];
+                for (int j = 0; j < items; j++) {
+                    c.itemTiles[j] = in.readUnsignedShort();
+                    c.itemModels[j] = in.readChar();
+                }
+                s.chunks[i] = c;
+            }
+            s.turnCount = in.readLong();
+            s.mode = in.readUnsignedByte();
+            s.schedulerNow = in.readLong();
+            s.schedulerSequence = in.readLong();
+            //older savegames keep the random source as it is
+            s.hasRandomState = version >= 2;
+            if (s.hasRandomState) s.randomState = in.readLong();
+            s.creatures = new CreatureState[in.readInt()];
+            for (int i = 0; i < s.creatures.length; i++) {
+                CreatureState c = new CreatureState();
+                c.flags = in.readUnsignedByte();
+                c.name = in.readUTF();
+                c.model = in.readChar();
+                c.x = in.readInt();
+                c.y = in.readInt();
+                c.hp = in.readInt();
+                c.ap = in.readInt();
+                c.direction = in.readUnsignedByte();
+                c.speed = in.readInt();
+                c.nextTurnTime = in.readLong();
+                c.turnSequence = in.readLong();
+                c.dormantChunk = in.readInt();
+                c.inventory = new char[in.readUnsignedShort()];
+                for (int j = 0; j < c.inventory.length; j++) {
+                    c.inventory[j] = in.readChar();
+                }
+                s.creatures[i] = c;
+            }
+            return s;
+        }
+    }
+
+    //RESTORING
+
+    private void apply(Snapshot full, Snapshot delta) throws IOException {
+        Snapshot last = delta != null ? delta : full;
+        GameMap map = game.getMap();
+        map.reset(last.mapName, last.width, last.height);
+        for (int i = 0; i < full.chunks.length; i++) {
+            ChunkState c = delta != null && delta.chunks[i] != null ? delta.chunks[i] : full.chunks[i];
+            if (c == null) continue;
+            Chunk chunk = map.getChunk(i);
+            MapFile.decodeChunk(ByteBuffer.wrap(c.encoded), 0, c.encoded.length, chunk);
+            int first = i << Chunk.INDEX_BITS;
+            if (c.seen != null) {
+                for (int local = 0; local < Chunk.AREA; local++) {
+                    if (Chunk.getBit(c.seen, local)) map.setSeen(first | local, true);
+                }
+            }
+            for (int j = 0; j < c.itemTiles.length; j++) {
+                Item.create(game, map.getX(first | c.itemTiles[j]), map.getY(first | c.itemTiles[j]), c.itemModels[j]);
+            }
+        }
+        game.clearCreatures(last.schedulerNow, last.schedulerSequence);
+        TurnScheduler scheduler = game.getScheduler();
+        Player player = null;
+        Creature toMove = null;
+        for (CreatureState s : last.creatures) {
+            Creature c;
+            if ((s.flags & PLAYER) != 0) {
+                player = Player.create(game, s.x, s.y);
+                c = player;
+            } else {
+                c = Creature.create(game, s.x, s.y, s.model);
+            }
+            c.setName(s.name);
+            c.restore(s.hp, s.ap, s.direction, (s.flags & MY_TURN) != 0);
+            c.setSpeed(s.speed);
+            for (char model : s.inventory) {
+                c.getInventory().addItem(new Item(s.x, s.y, model));
+            }
+            if ((s.flags & SCHEDULED) != 0) scheduler.restore(c, s.nextTurnTime, s.turnSequence);
+            if ((s.flags & DORMANT) != 0) scheduler.sleep(c, s.dormantChunk);
+            if ((s.flags & TO_MOVE) != 0) toMove = c;
+        }
+        if (player == null || toMove == null) throw new IOException("savegame without a player or a creature to move");
+        if (last.hasRandomState) game.getRandom().setState(last.randomState);
+        game.restore(last.turnCount, Game.GameModes.values()[last.mode], player, toMove);
+        autosaveBase = null;
+    }
+
+    //SNAPSHOTS. none of their fields are changed once they are captured or read, so the writer thread can use them.
+
+    private static final class Snapshot {
+        long id;
+        long baseId;
+        boolean delta;
+        String mapName;
+        int width;
+        int height;
+        int resizeVersion;
+        int mapVersion;
+        //by chunk index, null for chunks that are not part of the snapshot
+        ChunkState[] chunks;
+        long turnCount;
+        int mode;
+        long schedulerNow;
+        long schedulerSequence;
+        boolean hasRandomState = true;
+        long randomState;
+        CreatureState[] creatures;
+    }
+
+    private static final class ChunkState {
+        //the tile ids come from one of these: a copy of the chunk's ids, the map file of a chunk that was never
+        //loaded, or the encoded ids read from a savegame
+        short[] types;
+        MapFile source;
+        int sourceIndex;
+        byte[] encoded;
+        long[] seen;
+        int seenCount;
+        //local index and model of every item, one entry per item
+        int[] itemTiles = new int[0];
+        char[] itemModels = new char[0];
+
+        static ChunkState fromChunk(Chunk chunk) {
+            ChunkState c = new ChunkState();
+            c.types = chunk.types.clone();
+            c.seen = chunk.seen.clone();
+            c.seenCount = chunk.seenTileCount;
+            if (chunk.contents != null) {
+                int count = 0;
+                for (TileContents contents : chunk.contents) {
+                    if (contents != null && contents.items != null) count += contents.items.size();
+                }
+                c.itemTiles = new int[count];
+                c.itemModels = new char[count];
+                int j = 0;
+                for (int local = 0; local < Chunk.AREA; local++) {
+                    TileContents contents = chunk.contents[local];
+                    if (contents == null || contents.items == null) continue;
+                    for (Item item : contents.items) {
+                        c.itemTiles[j] = local;
+                        c.itemModels[j++] = item.getModel();
+                    }
+                }
+            }
+            return c;
+        }
+
+        static ChunkState fromSource(MapFile source, int chunkIndex) {
+            ChunkState c = new ChunkState();
+            c.source = source;
+            c.sourceIndex = chunkIndex;
+            return c;
+        }
+
+        byte[] getEncodedTypes() {
+            if (encoded != null) return encoded;
+            return types != null ? MapFile.encodeChunk(types) : source.rawChunk(sourceIndex);
+        }
+    }
+
+    private static final class CreatureState {
+        int flags;
+        String name;
+        char model;
+        int x;
+        int y;
+        int hp;
+        int ap;
+        int direction;
+        int speed;
+        long nextTurnTime;
+        long turnSequence;
+        int dormantChunk;
+        char[] inventory;
+
+        static CreatureState fromCreature(Creature creature, Game game) {
+            CreatureState c = new CreatureState();
+            TurnScheduler scheduler = game.getScheduler();
+            if (creature instanceof Player) c.flags |= PLAYER;
+            if (scheduler.contains(creature)) c.flags |= SCHEDULED;
+            if (scheduler.isDormant(creature)) c.flags |= DORMANT;
+            if (creature == game.getToMove()) c.flags |= TO_MOVE;
+            if (creature.isMyTurn()) c.flags |= MY_TURN;
+            c.name = creature.getName();
+            c.model = creature.getModel();
+            c.x = creature.getX();
+            c.y = creature.getY();
+            c.hp = creature.getHp();
+            c.ap = creature.getAp();
+            c.direction = creature.getDirection();
+            c.speed = creature.getSpeed();
+            c.nextTurnTime = creature.nextTurnTime;
+            c.turnSequence = creature.turnSequence;
+            c.dormantChunk = creature.dormantChunk;
+            ArrayList<Item> items = creature.getInventory().getItems();
+            c.inventory = new char[items.size()];
+            for (int i = 0; i < items.size(); i++) {
+                c.inventory[i] = items.get(i).getModel();
+            }
+            return c;
+        }
+    }
+}
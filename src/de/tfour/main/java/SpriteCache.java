@@ -0,0 +1,60 @@
+package de.tfour.main.java;
+
+import processing.core.PApplet;
+import processing.core.PImage;
+
+import java.util.stream.IntStream;
+
+//loads every sprite sheet once and hands the same frames to all creatures that use it, so spawning a creature does
+//not touch the disk and memory does not grow with the number of creatures.
+class SpriteCache {
+
+    private static final String RESOURCES = "src/de/tfour/main/resources/";
+    //frames per sheet: 4 directions times 3 animation steps
+    static final int FRAMES = 12;
+
+    private final PApplet applet;
+    //the sheets, null while not loaded. sheets that could not be loaded are an empty array.
+    private PImage[] player;
+    //by Creature.getVariant()
+    private final PImage[][] enemies = new PImage[Creature.VARIANTS][];
+
+    SpriteCache(PApplet applet) {
+        this.applet = applet;
+    }
+
+    //loads all sheets at once, decoding them on several threads. every thread fills its own slot.
+    void preload() {
+        IntStream.rangeClosed(0, Creature.VARIANTS).parallel().forEach(i -> {
+            if (i == Creature.VARIANTS) {
+                player = load("player/p");
+            } else {
+                enemies[i] = load("enemy/e" + (i + 1));
+            }
+        });
+    }
+
+    //the frames of the creature's sheet, or null if there is none. called for every creature in every frame, so it
+    //only looks the sheet up by the creature's variant.
+    PImage[] getFrames(Creature c) {
+        PImage[] frames;
+        if (c instanceof Player) {
+            if (player == null) player = load("player/p");
+            frames = player;
+        } else {
+            int variant = c.getVariant();
+            if (enemies[variant] == null) enemies[variant] = load("enemy/e" + (variant + 1));
+            frames = enemies[variant];
+        }
+        return frames.length == 0 ? null : frames;
+    }
+
+    private PImage[] load(String name) {
+        PImage[] frames = new PImage[FRAMES];
+        for (int i = 0; i < FRAMES; i++) {
+            frames[i] = applet.loadImage(RESOURCES + name + PApplet.nf(i, 2) + ".png");
+            if (frames[i] == null) return new PImage[0];
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,14 @@
+package de.tfour.main.java;
+
+import java.util.ArrayList;
+
+//the mutable part of a tile. only tiles that currently hold a creature or items have one of these.
+class TileContents {
+
+    Creature creature;
+    ArrayList<Item> items;
+
+    boolean isEmpty() {
+        return creature == null && (items == null || items.isEmpty());
+    }
+}
@@ -0,0 +1,98 @@
+package de.tfour.main.java;
+
+//everything that is the same for all tiles of one kind. the map only stores the id per tile and looks the rest up here.
+public final class TileType {
+
+    public enum Animation {
+        NONE, SHINY, SPARKLY
+    }
+
+    public static final int CARPET = 7;
+    //marks the cells of a chunk that lie outside of the map
+    static final short VOID = -1;
+
+    private static final TileType[] TYPES = new TileType[CARPET + 1];
+
+    static {
+        register(0, "Grass", "ff34a870", false, false, Animation.NONE, ' ', null);
+        register(1, "Stone", "ff6d7078", true, true, Animation.NONE, ' ', null);
+        register(2, "Water", "ff1f50cc", true, false, Animation.SPARKLY, '~', null);
+        register(3, "Lava", "fff52025", true, false, Animation.SPARKLY, '~', null);
+        register(4, "ShallowWater", "ff407cff", false, false, Animation.SPARKLY, ' ', null);
+        register(5, "ShallowLava", "ffcc7a47", false, false, Animation.SPARKLY, ' ', new TileEvent() {
+            @Override
+            public void execute(Tile t) {
+                t.getCreature().damage(3);
+            }
+        });
+        register(6, "Gold", "fff2a53f", true, true, Animation.SHINY, ' ', null);
+        register(CARPET, "Carpet", "ffa63a3a", false, false, Animation.NONE, ' ', null);
+    }
+
+    private final int id;
+    private final String name;
+    private final int color;
+    private final boolean solid;
+    //blocks the line of sight. water and lava cannot be walked on, but can be looked across.
+    private final boolean opaque;
+    private final Animation animation;
+    private final char model;
+    private final TileEvent tileEvent;
+
+    private TileType(int id, String name, int color, boolean solid, boolean opaque, Animation animation, char model, TileEvent tileEvent) {
+        this.id = id;
+        this.name = name;
+        this.color = color;
+        this.solid = solid;
+        this.opaque = opaque;
+        this.animation = animation;
+        this.model = model;
+        this.tileEvent = tileEvent;
+    }
+
+    private static void register(int id, String name, String color, boolean solid, boolean opaque, Animation animation, char model, TileEvent tileEvent) {
+        TYPES[id] = new TileType(id, name, (int) Long.parseLong(color, 16), solid, opaque, animation, model, tileEvent);
+    }
+
+    //unknown ids fall back to grass, like the old Tile constructor did
+    public static TileType get(int id) {
+        if (id < 0 || id >= TYPES.length) return TYPES[0];
+        return TYPES[id];
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getColor() {
+        return color;
+    }
+
+    public boolean isSolid() {
+        return solid;
+    }
+
+    public boolean isOpaque() {
+        return opaque;
+    }
+
+    public Animation getAnimation() {
+        return animation;
+    }
+
+    public boolean isAnimated() {
+        return animation != Animation.NONE;
+    }
+
+    public char getModel() {
+        return model;
+    }
+
+    public TileEvent getTileEvent() {
+        return tileEvent;
+    }
+}
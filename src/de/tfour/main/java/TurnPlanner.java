@@ -0,0 +1,112 @@
+package de.tfour.main.java;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//plans the turns of all ai creatures of a round at once, right after the player's turn ended.
+//every creature plans against the same state of the map (nobody has moved yet) with its own random generator, so the
+//plans do not depend on each other and can be computed in parallel. they are then committed one by one in turn order:
+//a plan is cut off before the first tile that a creature earlier in the order ends its turn on.
+//the outcome only depends on the game's seed, not on whether or on how many threads the plans were computed.
+class TurnPlanner {
+
+    //the plans of this many creatures are computed by one task, splitting further would cost more than it saves
+    private static final int BATCH_SIZE = 16;
+    private final Game game;
+    private boolean parallel = true;
+
+    TurnPlanner(Game game) {
+        this.game = game;
+    }
+
+    void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    //plans and commits the next turn of every creature. they have to be given in the order in which they move.
+    void planRound(List<Creature> creatures) {
+        if (creatures.isEmpty()) return;
+        GameMap map = game.getMap();
+        prepare(map, creatures);
+        long roundSeed = game.getRandom().nextLong();
+        List<ArrayList<Tile>> plans = new ArrayList<>(Collections.<ArrayList<Tile>>nCopies(creatures.size(), null));
+        if (parallel && creatures.size() > BATCH_SIZE) {
+            ForkJoinPool.commonPool().invoke(new PlanTask(creatures, plans, roundSeed, 0, creatures.size()));
+        } else {
+            for (int i = 0; i < creatures.size(); i++) {
+                plan(creatures, plans, roundSeed, i);
+            }
+        }
+        commit(map, creatures, plans);
+    }
+
+    //planning only reads the map. everything that would be created or computed lazily on the way is done up front,
+    //so the planning threads never write to shared state.
+    private static void prepare(GameMap map, List<Creature> creatures) {
+        map.ensureFlowField();
+        for (Creature c : creatures) {
+            //a plan reaches at most apPerTurn tiles away, and looks at the neighbours of the last one
+            int reach = c.getApPerTurn() + 1;
+            map.createChunks(c.getX() - reach, c.getY() - reach, c.getX() + reach, c.getY() + reach);
+        }
+    }
+
+    private static void plan(List<Creature> creatures, List<ArrayList<Tile>> plans, long roundSeed, int i) {
+        Creature c = creatures.get(i);
+        plans.set(i, c.planTurn(GameRandom.stream(roundSeed, i), c.getApPerTurn()));
+    }
+
+    //creatures move one after the other, so a plan can only collide with where earlier creatures end up.
+    //their starting tiles were already occupied when planning, later creatures have not moved yet.
+    private static void commit(GameMap map, List<Creature> creatures, List<ArrayList<Tile>> plans) {
+        HashSet<Integer> taken = new HashSet<>();
+        for (int i = 0; i < creatures.size(); i++) {
+            ArrayList<Tile> plan = plans.get(i);
+            for (int step = 0; step < plan.size(); step++) {
+                if (taken.contains(plan.get(step).getIndex())) {
+                    plan.subList(step, plan.size()).clear();
+                    break;
+                }
+            }
+            Creature c = creatures.get(i);
+            taken.add(plan.isEmpty() ? map.index(c.getX(), c.getY()) : plan.get(plan.size() - 1).getIndex());
+            c.setPlannedMoves(plan);
+        }
+    }
+
+    private static class PlanTask extends RecursiveAction {
+
+        //tasks are never serialized, RecursiveAction just happens to be Serializable
+        private static final long serialVersionUID = 1L;
+
+        private final List<Creature> creatures;
+        private final List<ArrayList<Tile>> plans;
+        private final long roundSeed;
+        private final int from;
+        private final int to;
+
+        PlanTask(List<Creature> creatures, List<ArrayList<Tile>> plans, long roundSeed, int from, int to) {
+            this.creatures = creatures;
+            this.plans = plans;
+            this.roundSeed = roundSeed;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH_SIZE) {
+                for (int i = from; i < to; i++) {
+                    plan(creatures, plans, roundSeed, i);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new PlanTask(creatures, plans, roundSeed, from, mid), new PlanTask(creatures, plans, roundSeed, mid, to));
+        }
+    }
+}
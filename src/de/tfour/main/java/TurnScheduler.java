@@ -0,0 +1,223 @@
+package de.tfour.main.java;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+//decides whose turn it is. every creature waits 100 * TURN_DELAY / speed time units between two of its turns, so a
+//creature with speed 200 moves twice as often as one with speed 100. the creature that is due next is taken from a
+//binary min-heap, creatures that are due at the same time move in the order they were scheduled.
+//adding, removing and taking the next creature are O(log n).
+//creatures far away from everything can be put to sleep: they leave the heap, cost nothing while they sleep and are
+//woken up in bulk by chunk.
+class TurnScheduler {
+
+    static final int TURN_DELAY = 100;
+    private static final int NOT_SCHEDULED = -1;
+    private static final int DORMANT = -2;
+
+    private Creature[] heap = new Creature[16];
+    private int size;
+    //the time of the turn that was handed out last
+    private long now;
+    //breaks ties between creatures that are due at the same time
+    private long sequence;
+    //sleeping creatures by the index of the chunk they sleep in
+    private final HashMap<Integer, ArrayList<Creature>> dormant = new HashMap<>();
+    private int dormantCount;
+
+    //schedules a creature that is new to the turn order. it gets its first turn after waiting one delay.
+    void add(Creature c) {
+        if (c.schedulerIndex != NOT_SCHEDULED) return;
+        schedule(c, now + getDelay(c));
+    }
+
+    //takes a creature out of the turn order, e.g. because it died
+    void remove(Creature c) {
+        if (c.schedulerIndex == DORMANT) {
+            ArrayList<Creature> sleeping = dormant.get(c.dormantChunk);
+            sleeping.remove(c);
+            if (sleeping.isEmpty()) dormant.remove(c.dormantChunk);
+            dormantCount--;
+            c.schedulerIndex = NOT_SCHEDULED;
+            return;
+        }
+        int i = c.schedulerIndex;
+        if (i < 0) return;
+        size--;
+        Creature last = heap[size];
+        heap[size] = null;
+        c.schedulerIndex = NOT_SCHEDULED;
+        if (i == size) return;
+        heap[i] = last;
+        last.schedulerIndex = i;
+        siftDown(i);
+        siftUp(last.schedulerIndex);
+    }
+
+    //the creature whose turn is next, or null if nobody is scheduled. it is rescheduled for its following turn right away.
+    Creature next() {
+        if (size == 0) return null;
+        Creature c = heap[0];
+        now = c.nextTurnTime;
+        remove(c);
+        schedule(c, now + getDelay(c));
+        return c;
+    }
+
+    //the scheduled creatures whose next turn comes before the given creature's next turn, in turn order.
+    //creatures that come around more than once in that time are only listed once.
+    List<Creature> getTurnsBefore(Creature c) {
+        ArrayList<Creature> before = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (c.schedulerIndex < 0 || isEarlier(heap[i], c)) before.add(heap[i]);
+        }
+        before.sort(new Comparator<Creature>() {
+            @Override
+            public int compare(Creature a, Creature b) {
+                return a == b ? 0 : isEarlier(a, b) ? -1 : 1;
+            }
+        });
+        return before;
+    }
+
+    //schedules a creature for a turn that was saved earlier, see SaveGame
+    void restore(Creature c, long nextTurnTime, long turnSequence) {
+        if (c.schedulerIndex != NOT_SCHEDULED) return;
+        c.nextTurnTime = nextTurnTime;
+        c.turnSequence = turnSequence;
+        insert(c);
+    }
+
+    //takes every creature out of the turn order and starts the clock again at the given time
+    void clear(long now, long sequence) {
+        for (int i = 0; i < size; i++) {
+            heap[i].schedulerIndex = NOT_SCHEDULED;
+            heap[i] = null;
+        }
+        size = 0;
+        for (ArrayList<Creature> sleeping : dormant.values()) {
+            for (Creature c : sleeping) {
+                c.schedulerIndex = NOT_SCHEDULED;
+            }
+        }
+        dormant.clear();
+        dormantCount = 0;
+        this.now = now;
+        this.sequence = sequence;
+    }
+
+    long getNow() {
+        return now;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    //puts a scheduled creature to sleep in the given chunk
+    void sleep(Creature c, int chunkIndex) {
+        if (c.schedulerIndex < 0) return;
+        remove(c);
+        c.schedulerIndex = DORMANT;
+        c.dormantChunk = chunkIndex;
+        ArrayList<Creature> sleeping = dormant.get(chunkIndex);
+        if (sleeping == null) {
+            sleeping = new ArrayList<>();
+            dormant.put(chunkIndex, sleeping);
+        }
+        sleeping.add(c);
+        dormantCount++;
+    }
+
+    //wakes all creatures sleeping in the chunk. they get their next turn after waiting one delay.
+    void wake(int chunkIndex) {
+        ArrayList<Creature> sleeping = dormant.remove(chunkIndex);
+        if (sleeping == null) return;
+        for (Creature c : sleeping) {
+            c.schedulerIndex = NOT_SCHEDULED;
+            schedule(c, now + getDelay(c));
+        }
+        dormantCount -= sleeping.size();
+    }
+
+    boolean isDormant(Creature c) {
+        return c.schedulerIndex == DORMANT;
+    }
+
+    boolean contains(Creature c) {
+        return c.schedulerIndex != NOT_SCHEDULED;
+    }
+
+    //number of creatures that get turns, sleeping ones not included
+    int size() {
+        return size;
+    }
+
+    int getDormantCount() {
+        return dormantCount;
+    }
+
+    //all creatures, awake ones first. the order is the same on every run, but is not the turn order.
+    ArrayList<Creature> getCreatures() {
+        ArrayList<Creature> all = new ArrayList<>(Arrays.asList(heap).subList(0, size));
+        for (ArrayList<Creature> sleeping : dormant.values()) {
+            all.addAll(sleeping);
+        }
+        return all;
+    }
+
+    private static long getDelay(Creature c) {
+        return Math.max(1, 100L * TURN_DELAY / Math.max(1, c.getSpeed()));
+    }
+
+    private void schedule(Creature c, long time) {
+        c.nextTurnTime = time;
+        c.turnSequence = sequence++;
+        insert(c);
+    }
+
+    private void insert(Creature c) {
+        if (size == heap.length) heap = Arrays.copyOf(heap, size * 2);
+        heap[size] = c;
+        c.schedulerIndex = size;
+        size++;
+        siftUp(size - 1);
+    }
+
+    private static boolean isEarlier(Creature a, Creature b) {
+        if (a.nextTurnTime != b.nextTurnTime) return a.nextTurnTime < b.nextTurnTime;
+        return a.turnSequence < b.turnSequence;
+    }
+
+    private void siftUp(int pos) {
+        Creature c = heap[pos];
+        while (pos > 0) {
+            int parentPos = (pos - 1) >> 1;
+            Creature parent = heap[parentPos];
+            if (!isEarlier(c, parent)) break;
+            heap[pos] = parent;
+            parent.schedulerIndex = pos;
+            pos = parentPos;
+        }
+        heap[pos] = c;
+        c.schedulerIndex = pos;
+    }
+
+    private void siftDown(int pos) {
+        Creature c = heap[pos];
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= size) break;
+            if (child + 1 < size && isEarlier(heap[child + 1], heap[child])) child++;
+            if (!isEarlier(heap[child], c)) break;
+            heap[pos] = heap[child];
+            heap[pos].schedulerIndex = pos;
+            pos = child;
+        }
+        heap[pos] = c;
+        c.schedulerIndex = pos;
+    }
+}